@@ -3,17 +3,29 @@ package com.hex.ai;
 import com.hex.core.AI;
 
 public enum AiTypes {
-    GameAI, BeeAI;
+    GameAI, BeeAI, MctsAI;
 
     public static AI newAI(AiTypes type, int playerPos, int gridSize, int difficulty) {
         switch(type) {
         case GameAI:
             return new GameAI(playerPos);
         case BeeAI:
-            int depth = difficulty;
-            int beamSize = 7 - difficulty;
-            return new BeeGameAI(playerPos, gridSize, depth, beamSize);
+            return new BeeGameAI(playerPos, gridSize, beeDepth(difficulty), beeBeamSize(difficulty));
+        case MctsAI:
+            return new MctsGameAI(playerPos, gridSize, mctsPlayouts(difficulty));
         }
         return null;
     }
+
+    static int beeDepth(int difficulty) {
+        return difficulty;
+    }
+
+    static int beeBeamSize(int difficulty) {
+        return 7 - difficulty;
+    }
+
+    static int mctsPlayouts(int difficulty) {
+        return 1000 << 2 * difficulty;
+    }
 }
@@ -0,0 +1,49 @@
+package com.hex.ai;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reads the JVM's count of the bytes each thread has allocated, where there is one.
+ *
+ * The counter belongs to com.sun.management, which Android and some JVMs do not have, so it is found by reflection and everything still works without it.
+ */
+final class Allocations {
+    private static final Object threads;
+    private static final Method allocatedBytes;
+
+    static {
+        Object bean = null;
+        Method method = null;
+        try {
+            bean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+            Class<?> counter = Class.forName("com.sun.management.ThreadMXBean");
+            if(counter.isInstance(bean) && (Boolean) counter.getMethod("isThreadAllocatedMemorySupported").invoke(bean)) {
+                counter.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(bean, true);
+                method = counter.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        }
+        catch(Exception e) {
+            method = null;
+        }
+        catch(LinkageError e) {
+            method = null;
+        }
+        threads = bean;
+        allocatedBytes = method;
+    }
+
+    private Allocations() {}
+
+    /**
+     * Returns the bytes the current thread has allocated since it started, or -1 if they are not counted
+     */
+    static long currentThread() {
+        if(allocatedBytes == null) return -1;
+        try {
+            return (Long) allocatedBytes.invoke(threads, Thread.currentThread().getId());
+        }
+        catch(Exception e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.hex.ai;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hex.core.Point;
+
+/**
+ * Scores every position of an archive of saved games with Bee, on every core.
+ *
+ * The archive is a list of files and directories, read in order, directories by their files in name order. Every line of a file that is not blank is one game
+ * as Game.save() writes it. The games are read as they are needed and only a few per thread are held at a time, so an archive of any size takes the same
+ * memory. Every game is replayed from its move list, and Bee chooses a move in each position before the game was won: the output gives the move played, Bee's
+ * move, its value for the player to move and the line Bee expects after it. Each thread has its own single-threaded Bee.
+ *
+ * The results are written in the order of the games, one block of lines per game: a line per position, then an end line, or an error line if the game could not
+ * be replayed. A run that is stopped leaves a file of whole games, less any block it was writing, and running again with the same arguments carries on after
+ * the last whole game.
+ *
+ * Usage: BatchAnalysis output depth beamSize path...
+ */
+public final class BatchAnalysis {
+    private final static String HEADER = "# game\tply\tteam\tplayed\tbest\tvalue\tline";
+    // The games read but not written yet for each thread, which bounds the memory
+    private final static int GAMES_PER_THREAD = 4;
+    private final static int REPORT_INTERVAL = 1000;
+    private final static int TABLE_MEMORY = 8 * 1024 * 1024;
+
+    private final File output;
+    private final List<File> inputs;
+    private final int depth, beamSize, threads;
+
+    // Each thread's Bees, by board size, created the first time the thread needs one
+    private final ThreadLocal<HashMap<Integer, BeeGameAI>> players = new ThreadLocal<HashMap<Integer, BeeGameAI>>();
+    // The finished games waiting for the games before them, by their number
+    private final HashMap<Long, String> finished = new HashMap<Long, String>();
+    // A permit for each game that may be read, given back when its block is written
+    private Semaphore inFlight;
+    private long nextToWrite;
+    private Writer writer;
+    private IOException writeError;
+
+    /**
+     * Constructor for the BatchAnalysis class
+     *
+     * @param output
+     *            the results file, carried on from if it exists
+     * @param inputs
+     *            the files and directories of saved games
+     * @param depth
+     *            the depth Bee searches every position to
+     * @param beamSize
+     *            the number of moves Bee tries at each depth
+     * @param threads
+     *            the number of games to analyse at once
+     */
+    public BatchAnalysis(File output, List<File> inputs, int depth, int beamSize, int threads) {
+        this.output = output;
+        this.inputs = new ArrayList<File>(inputs);
+        this.depth = depth;
+        this.beamSize = beamSize;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Analyses the games that are not in the results file yet
+     */
+    public void run() throws IOException, InterruptedException {
+        long done = resume();
+        writer = new OutputStreamWriter(new FileOutputStream(output, true), "UTF-8");
+        if(done == 0 && output.length() == 0) {
+            writer.write(HEADER + "\n");
+            writer.flush();
+        }
+        nextToWrite = done;
+        System.out.println(done + " games already analysed");
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        inFlight = new Semaphore(threads * GAMES_PER_THREAD);
+        long game = 0;
+        try {
+            for(File file : files()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+                try {
+                    String line;
+                    int lineNumber = 0;
+                    while((line = reader.readLine()) != null) {
+                        lineNumber++;
+                        if(line.trim().isEmpty()) continue;
+                        if(game++ < done) continue;
+
+                        inFlight.acquire();
+                        if(failed()) break;
+                        final long number = game - 1;
+                        final String id = file.getPath() + ":" + lineNumber;
+                        final String save = line;
+                        pool.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                // Any failure, even a stack overflow, fails only this game,
+                                // since its block has to be written for the games after it
+                                String block;
+                                try {
+                                    block = analyse(id, save);
+                                }
+                                catch(Throwable e) {
+                                    block = id + "\terror\t" + e + "\n";
+                                }
+                                write(number, block);
+                            }
+                        });
+                    }
+                }
+                finally {
+                    reader.close();
+                }
+                if(failed()) break;
+            }
+        }
+        finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            writer.close();
+        }
+        if(writeError != null) throw writeError;
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long analysed = game - done;
+        System.out.println(String.format("%d games in %.1fs: %.2f games/s on %d threads", analysed, seconds, analysed / Math.max(seconds, 1e-9), threads));
+    }
+
+    /**
+     * Finds the games already in the results file, and cuts off a block that was being written when the last run stopped
+     *
+     * @return the number of games in the file
+     */
+    private long resume() throws IOException {
+        if(!output.exists()) return 0;
+        long games = 0;
+        long end = 0;
+        long offset = 0;
+        InputStream input = new BufferedInputStream(new FileInputStream(output));
+        try {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            for(int b = input.read(); b >= 0; b = input.read()) {
+                offset++;
+                if(b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String[] fields = line.toString("UTF-8").split("\t");
+                line.reset();
+                if(fields[0].startsWith("#")) {
+                    end = offset;
+                }
+                else if(fields.length >= 2 && (fields[1].equals("end") || fields[1].equals("error"))) {
+                    games++;
+                    end = offset;
+                }
+            }
+        }
+        finally {
+            input.close();
+        }
+
+        if(end < output.length()) {
+            RandomAccessFile file = new RandomAccessFile(output, "rw");
+            try {
+                file.setLength(end);
+            }
+            finally {
+                file.close();
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Lists the files of the archive, in order
+     */
+    private List<File> files() throws IOException {
+        List<File> files = new ArrayList<File>();
+        for(File input : inputs) {
+            addFiles(input, files);
+        }
+        return files;
+    }
+
+    private static void addFiles(File file, List<File> files) throws IOException {
+        if(!file.isDirectory()) {
+            if(!file.isFile()) throw new IOException("No such file: " + file);
+            files.add(file);
+            return;
+        }
+        File[] children = file.listFiles();
+        if(children == null) throw new IOException("Can not list " + file);
+        Arrays.sort(children);
+        for(File child : children) {
+            addFiles(child, files);
+        }
+    }
+
+    /**
+     * Replays a saved game and has Bee choose a move in every position before it was won
+     *
+     * @param id
+     *            the file and line of the game
+     * @param save
+     *            the game, as Game.save() writes it
+     * @return the block of lines of the game
+     */
+    private String analyse(String id, String save) {
+        JsonObject game = new JsonParser().parse(save).getAsJsonObject();
+        JsonObject options = game.getAsJsonObject("gameOptions");
+        int gridSize = options.get("gridSize").getAsInt();
+        JsonElement swap = options.get("swap");
+        JsonArray moves = game.getAsJsonObject("moveList").getAsJsonArray("moveList");
+
+        BeeGameAI bee = player(gridSize);
+        Position position = new Position(gridSize, swap != null && swap.getAsBoolean());
+        StringBuilder block = new StringBuilder();
+        for(int ply = 0; ply < moves.size() && position.getWinner() == 0; ply++) {
+            JsonObject move = moves.get(ply).getAsJsonObject();
+            int x = move.get("x").getAsInt();
+            int y = move.get("y").getAsInt();
+            if(move.get("team").getAsInt() != position.getTeam() || !position.isLegal(x, y)) {
+                return id + "\terror\tillegal move " + (ply + 1) + "\n";
+            }
+
+            ScoredMove best = bee.chooseMove(position, Budget.DEFAULT);
+            block.append(id).append('\t').append(ply).append('\t').append(position.getTeam()).append('\t').append(x).append(',').append(y).append('\t');
+            if(best == null) {
+                block.append("-\t0\t");
+            }
+            else {
+                block.append(best.move.x).append(',').append(best.move.y).append('\t').append(best.score).append('\t');
+                List<Point> line = bee.principalLine(position, best.move);
+                for(int i = 0; i < line.size(); i++) {
+                    if(i > 0) block.append(' ');
+                    block.append(line.get(i).x).append(',').append(line.get(i).y);
+                }
+            }
+            block.append('\n');
+            position = position.play(x, y);
+        }
+        block.append(id).append("\tend\t").append(moves.size()).append('\n');
+        return block.toString();
+    }
+
+    /**
+     * Returns this thread's Bee for a board size. It has no opening book, so every position is searched.
+     */
+    private BeeGameAI player(int gridSize) {
+        HashMap<Integer, BeeGameAI> bees = players.get();
+        if(bees == null) {
+            bees = new HashMap<Integer, BeeGameAI>();
+            players.set(bees);
+        }
+        BeeGameAI bee = bees.get(gridSize);
+        if(bee == null) {
+            bee = new BeeGameAI(1, gridSize, depth, beamSize, TABLE_MEMORY, 1);
+            bee.setOpeningBook(null);
+            bees.put(gridSize, bee);
+        }
+        return bee;
+    }
+
+    /**
+     * Writes the block of a game once the blocks of the games before it are written, and gives back the permit of every block written. After a write fails
+     * nothing more is written, and the permits are given back so the reading stops.
+     */
+    private synchronized void write(long game, String block) {
+        if(writeError != null) {
+            inFlight.release();
+            return;
+        }
+        finished.put(game, block);
+        try {
+            while(finished.containsKey(nextToWrite)) {
+                String next = finished.remove(nextToWrite);
+                inFlight.release();
+                writer.write(next);
+                nextToWrite++;
+                if(nextToWrite % REPORT_INTERVAL == 0) System.out.println(nextToWrite + " games analysed");
+            }
+            writer.flush();
+        }
+        catch(IOException e) {
+            writeError = e;
+            inFlight.release(finished.size());
+            finished.clear();
+        }
+    }
+
+    private synchronized boolean failed() {
+        return writeError != null;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length < 4) {
+            System.err.println("Usage: BatchAnalysis output depth beamSize path...");
+            System.exit(1);
+        }
+        int depth = Integer.parseInt(args[1]);
+        int beamSize = Integer.parseInt(args[2]);
+        List<File> inputs = new ArrayList<File>();
+        for(int i = 3; i < args.length; i++) {
+            inputs.add(new File(args[i]));
+        }
+        new BatchAnalysis(new File(args[0]), inputs, depth, beamSize, Runtime.getRuntime().availableProcessors()).run();
+        System.exit(0);
+    }
+}
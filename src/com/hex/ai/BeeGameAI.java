@@ -2,13 +2,13 @@ package com.hex.ai;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.ConcurrentModificationException;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.hex.core.AI;
 import com.hex.core.Game;
@@ -21,18 +21,59 @@ import com.hex.core.Point;
  * @author Konstantin Lopyrev
  * @version June 2006
  */
-public class BeeGameAI extends AI {
+public class BeeGameAI extends AI implements Engine {
     private final static boolean DEBUG = false;
     private final static long serialVersionUID = 1L;
     private final static int RED = 1, BLUE = 2;
-
-    // List of the AI's state. Used when Undo is called.
-    private final LinkedList<AIHistoryObject> history = new LinkedList<AIHistoryObject>();
-    private final int gridSize, maxDepth, beamSize;
-
-    private transient EvaluationNode[][] nodesArray;
-    private transient int[][] pieces;
-    private transient HashMap<Integer, Integer> lookUpTable;
+    private final static int DEFAULT_TABLE_MEMORY = 8 * 1024 * 1024;
+    private final static int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    private final static int DEFAULT_SOLVER_EMPTY_CELLS = 20;
+    private final static long DEFAULT_SOLVER_NODES = 200000;
+
+    // The threads that search the moves of every Bee
+    private static ForkJoinPool pool;
+
+    // The pieces placed each turn. Used when Undo is called.
+    private final UndoLog history = new UndoLog();
+    private final int gridSize, maxDepth, beamSize, threads;
+    // The time in milliseconds each move may take, or 0 to always search to maxDepth
+    private long moveTime;
+    // Whether to search the opponent's likely replies while they think
+    private boolean ponder;
+    // Below how many empty cells positions are solved exactly, and the most positions a solve may expand
+    private int solverEmptyCells = DEFAULT_SOLVER_EMPTY_CELLS;
+    private long solverNodes = DEFAULT_SOLVER_NODES;
+    // Whether other Bees search with the table at the same time, so it is aged by its owner
+    private boolean tableShared;
+
+    private transient BitBoard board;
+    private transient TranspositionTable table;
+    // The search state of each thread
+    private transient BeeSearch[] searches;
+    // When the current move has to be made by, in System.nanoTime()
+    private transient volatile long deadline;
+    private transient volatile boolean deadlineSet;
+    // Set by another thread to stop the running search
+    private transient volatile boolean stopRequested;
+    // The thread searching on the opponent's time, and the moves it
+    // has found so far, by the cell of the reply they answer
+    private transient Thread ponderThread;
+    private transient volatile boolean ponderStopped;
+    private transient HashMap<Integer, Integer> ponderedMoves;
+    // The exact solver for late positions, created the first time it is needed
+    private transient ProofSolver solver;
+    // The opening book consulted before searching, or null for none
+    private transient OpeningBook book;
+    // Told about every search, or null
+    private transient volatile SearchListener listener;
+    // The deepest search of the last move that finished
+    private transient int depthReached;
+    // The counters of the last search
+    private transient long nodes, cutoffs, reorderedCutoffs;
+    // The value of the best move of the last search
+    private transient int value;
+    // The counters of the last solve
+    private transient long solvedNodes, solveTime, proofSize;
 
     /**
      * Constructor for the Bee object
@@ -45,35 +86,160 @@ public class BeeGameAI extends AI {
      *            the colour of Bee
      */
     public BeeGameAI(int team, int gridSize, int depth, int beamSize) {
+        this(team, gridSize, depth, beamSize, DEFAULT_TABLE_MEMORY);
+    }
+
+    /**
+     * Constructor for the Bee object
+     * 
+     * @param tableMemory
+     *            the most memory, in bytes, the transposition table may use
+     */
+    public BeeGameAI(int team, int gridSize, int depth, int beamSize, int tableMemory) {
+        this(team, gridSize, depth, beamSize, tableMemory, DEFAULT_THREADS);
+    }
+
+    /**
+     * Constructor for the Bee object
+     * 
+     * @param tableMemory
+     *            the most memory, in bytes, the transposition table may use
+     * @param threads
+     *            the most threads to search with. The move does not depend on it.
+     */
+    public BeeGameAI(int team, int gridSize, int depth, int beamSize, int tableMemory, int threads) {
+        this(team, gridSize, depth, beamSize, new TranspositionTable(tableMemory), threads);
+    }
+
+    /**
+     * Constructor for a Bee that shares its transposition table with other Bees of the same board size. The table is safe to share between threads.
+     */
+    BeeGameAI(int team, int gridSize, int depth, int beamSize, TranspositionTable table, int threads) {
         super(team);
-        // Creates the pieces array that stores the board inside Bee
+        // Creates the board that stores the game inside Bee
         this.maxDepth = depth;
         this.beamSize = beamSize;
         this.gridSize = gridSize;
-        pieces = new int[gridSize + 2][gridSize + 2];
-        for(int i = 1; i < pieces.length - 1; i++) {
-            pieces[i][0] = RED;
-            pieces[0][i] = BLUE;
-            pieces[i][pieces.length - 1] = RED;
-            pieces[pieces.length - 1][i] = BLUE;
-        }
-        lookUpTable = new HashMap<Integer, Integer>();
+        this.threads = Math.max(1, threads);
+        board = new BitBoard(gridSize);
+        this.table = table;
+        searches = new BeeSearch[this.threads];
+        ponderedMoves = new HashMap<Integer, Integer>();
+        book = OpeningBook.getDefault();
     }
 
-    public class AIHistoryObject implements Serializable {
-        private static final long serialVersionUID = 1L;
-        int[][] pieces;
-        HashMap<Integer, Integer> lookUpTable;
-
-        public AIHistoryObject(int[][] pieces, HashMap<Integer, Integer> lookUpTable) {
-            this.pieces = new int[pieces.length][pieces.length];
-            for(int i = 0; i < pieces.length; i++) {
-                for(int j = 0; j < pieces.length; j++) {
-                    this.pieces[i][j] = pieces[i][j];
-                }
-            }
-            this.lookUpTable = lookUpTable;
-        }
+    /**
+     * Limits the time each move may take. Instead of searching straight to its maximum depth, Bee then searches one depth deeper at a time and makes the best move
+     * of the deepest search that finished in time.
+     * 
+     * @param moveTime
+     *            the time in milliseconds, or 0 to always search to the maximum depth
+     */
+    public void setMoveTime(long moveTime) {
+        this.moveTime = moveTime;
+    }
+
+    /**
+     * Lets Bee think on the opponent's time. After each move, Bee searches the opponent's most likely replies in the background, so if the opponent plays one of
+     * them Bee answers at once, and otherwise starts from a transposition table that is already warm.
+     * 
+     * @param ponder
+     *            true to search while the opponent thinks
+     */
+    public void setPondering(boolean ponder) {
+        this.ponder = ponder;
+    }
+
+    /**
+     * Lets Bee solve late positions exactly. Once fewer than emptyCells cells are empty, Bee first tries to prove it has a winning move, and plays it at once if
+     * it finds one. If the solver runs out of nodes or proves the position lost, Bee searches as usual.
+     * 
+     * @param emptyCells
+     *            the number of empty cells below which positions are solved, or 0 to never solve
+     * @param nodeBudget
+     *            the most positions one solve may expand
+     */
+    public void setSolver(int emptyCells, long nodeBudget) {
+        this.solverEmptyCells = emptyCells;
+        this.solverNodes = nodeBudget;
+    }
+
+    /**
+     * Sets the opening book Bee plays from before searching. Bee starts with the default book.
+     * 
+     * @param book
+     *            the book, or null to always search
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Tells Bee whether other Bees search with its transposition table at the same time. Bee then leaves the table's generation to whoever shares it,
+     * since starting a new search at every move would age the entries of the searches still running.
+     */
+    void setTableShared(boolean tableShared) {
+        this.tableShared = tableShared;
+    }
+
+    /**
+     * Sets the listener told the metrics of every move Bee searches for. While there is one, Bee also measures the time of each phase of its search.
+     * 
+     * @param listener
+     *            the listener, or null for none
+     */
+    public void setSearchListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the number of nodes Bee expanded in its last search
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of beta cutoffs in Bee's last search
+     */
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * Returns the number of positions Bee's last solve expanded, or 0 if the last move was not solved
+     */
+    public long getSolverNodes() {
+        return solvedNodes;
+    }
+
+    /**
+     * Returns the number of positions Bee's last solve expanded per second
+     */
+    public long getSolverNodesPerSecond() {
+        return solveTime == 0 ? 0 : solvedNodes * 1000000000L / solveTime;
+    }
+
+    /**
+     * Returns the number of positions in the proof of Bee's last solve, or 0 if it did not prove a win
+     */
+    public long getProofSize() {
+        return proofSize;
+    }
+
+    /**
+     * Returns the value of the best move of Bee's last search, for Bee
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the number of beta cutoffs in Bee's last search that came from a move the killer moves or the history heuristic tried earlier than the
+     * two-distances would have
+     */
+    public long getReorderedCutoffs() {
+        return reorderedCutoffs;
     }
 
     /**
@@ -82,98 +248,233 @@ public class BeeGameAI extends AI {
     @Override
     public void getPlayerTurn(Game game) {
         super.getPlayerTurn(game);
-        AIHistoryObject state = new AIHistoryObject(pieces, lookUpTable);
-        try {
-            history.add(state);
+        stopPondering();
+        history.startTurn();
+
+        // Records the opponent's move on Bee's board
+        Position position = Position.of(game, team);
+        Point lastMove = position.getLastMove();
+        if(lastMove != null) history.place(board, position.toBitBoard(lastMove), team == 1 ? 2 : 1);
+
+        // If the reply was searched while the opponent was thinking,
+        // the move is already known, unless the book has one.
+        Integer ponderedMove = lastMove == null ? null : ponderedMoves.get(position.toBitBoard(lastMove));
+        if(ponderedMove != null && book != null && book.lookup(position) != null) ponderedMove = null;
+        int cell;
+        if(ponderedMove != null) {
+            cell = ponderedMove;
         }
-        catch(ConcurrentModificationException e) {
-            e.printStackTrace();
-            return;
+        else {
+            ScoredMove move = chooseMove(position, Budget.DEFAULT);
+            if(move == null) return;
+            cell = position.toBitBoard(move.move);
         }
-        int moveNumber = game.getMoveNumber();
+        history.place(board, cell, team);
+        if(!getSkipMove()) GameAction.makeMove(this, position.fromBitBoard(cell), game);
 
-        Point lastMove;
-        try {
-            if(moveNumber > 1) lastMove = new Point(gridSize - 1 - game.getMoveList().getMove().getY(), game.getMoveList().getMove().getX());
-            else lastMove = null;
-        }
-        catch(Exception e) {
-            lastMove = null;
+        ponderedMoves.clear();
+        if(ponder && !getSkipMove()) startPondering();
+    }
+
+    /**
+     * Chooses a move without playing it. Bee plays from its opening book, then makes the first move of a game in the centre of the board, and otherwise
+     * searches. The default budget is Bee's own depth and move time.
+     */
+    @Override
+    public ScoredMove chooseMove(Position position, Budget budget) {
+        stopPondering();
+        if(book != null) {
+            ScoredMove bookMove = book.lookup(position);
+            if(bookMove != null) return bookMove;
         }
-        // If Bee is to make the first move in the game,
-        // it makes it in the centre of the board.
-        if(lastMove == null) {
-            pieces[pieces.length / 2][pieces.length / 2] = team;
-            if(!getSkipMove()) GameAction.makeMove(this, new Point(pieces.length / 2 - 1, pieces.length / 2 - 1), game);
+
+        BitBoard board = position.toBitBoard();
+        if(position.getLastMove() == null) return new ScoredMove(position.fromBitBoard(board.cell(board.width() / 2, board.width() / 2)), 0);
+
+        long timeLimit = budget.isDefault() ? moveTime : budget.getMillis();
+        SearchListener listener = this.listener;
+        if(listener != null) listener.searchStarted();
+        long start = System.nanoTime();
+        long allocated = listener == null ? -1 : Allocations.currentThread();
+        Point bestMove = getBestMove(board, position.getTeam(), timeLimit, budget.getNodes(), false);
+        if(listener != null) listener.searchFinished(metrics(position.getTeam(), System.nanoTime() - start, allocated));
+        if(bestMove.x < 0) return null;
+        return new ScoredMove(position.fromBitBoard(board.cell(bestMove.x, bestMove.y)), value);
+    }
+
+    /**
+     * Starts searching the opponent's most likely replies in the background
+     */
+    private void startPondering() {
+        final BitBoard position = new BitBoard(gridSize);
+        position.copyFrom(board);
+        ponderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ponder(position);
+            }
+        }, "Bee ponder");
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
+
+    /**
+     * Searches Bee's answers to the opponent's replies, best replies first, until stopped. The replies are ranked the same way Bee ranks moves in its own
+     * search, and only the several best are tried.
+     * 
+     * @param position
+     *            the board after Bee's move
+     */
+    private void ponder(BitBoard position) {
+        int opponent = team == RED ? BLUE : RED;
+        if(searches[0] == null) searches[0] = new BeeSearch(this, gridSize, maxDepth, beamSize, table);
+        searches[0].setPosition(position, opponent, maxDepth);
+        int[] replies = new int[position.cells()];
+        int replyCount = Math.min(beamSize, searches[0].orderedMoves(replies));
+        for(int i = 0; i < replyCount && !ponderStopped; i++) {
+            position.set(replies[i], opponent);
+            Point bestMove = getBestMove(position, team, 0, 0, true);
+            position.set(replies[i], 0);
+
+            // An answer whose search was stopped is not known
+            if(ponderStopped || bestMove.x < 0) break;
+            ponderedMoves.put(replies[i], position.cell(bestMove.x, bestMove.y));
         }
-        // If a move has been made already,
-        // Bee records the move in the pieces array
-        // and makes its own move.
-        else {
-            pieces[lastMove.x + 1][lastMove.y + 1] = team == 1 ? 2 : 1;
-            Point bestMove = getBestMove();
-            pieces[bestMove.x][bestMove.y] = team;
-            int x = bestMove.x - 1;
-            int y = bestMove.y - 1;
+    }
 
-            if(!getSkipMove()) GameAction.makeMove(this, new Point(y, gridSize - 1 - x), game);
+    /**
+     * Stops searching on the opponent's time, and waits until the search has stopped
+     */
+    private void stopPondering() {
+        if(ponderThread == null) return;
+        ponderStopped = true;
+        try {
+            ponderThread.join();
+        }
+        catch(InterruptedException e) {
+            e.printStackTrace();
         }
+        ponderThread = null;
+        ponderStopped = false;
     }
 
     @Override
     public void undoCalled() {
-        if(history.size() > 0) {
-            AIHistoryObject previousState = history.get(history.size() - 1);
-            pieces = previousState.pieces;
-            lookUpTable = previousState.lookUpTable;
-            history.remove(history.size() - 1);
-        }
+        stopPondering();
+        ponderedMoves.clear();
+        history.undoTurn(board);
         super.undoCalled();
     }
 
     /**
-     * Gets the best move on the board
+     * Gets the best move on a board
      * 
-     * @return the point containing the move coordinates
-     */
-    private Point getBestMove() {
-        // Initially sets the best move to an invalid move with
-        // the lowest possible move value
-        int bestValue = team == RED ? Integer.MIN_VALUE : Integer.MAX_VALUE;
-        int bestRow = -1;
-        int bestColumn = -1;
-        int[][] tempValueArray = new int[pieces.length][pieces.length];
-        // Tries every single move possible and evaluates how good it is.
-        for(int i = 1; i < pieces.length - 1; i++) {
-            for(int j = 1; j < pieces.length - 1; j++) {
-                if(pieces[i][j] != 0) continue;
-
-                // Gets the evaluation for the move by expanding
-                // the game tree.
-                pieces[i][j] = team;
-                int value = expand(1, bestValue, team == RED ? BLUE : RED, nodesArray);
-                pieces[i][j] = 0;
-                tempValueArray[j][pieces.length - 1 - i] = value;
-
-                // Compares the last move to the best move so far
-                // and records the move if it is better.
-                if(team == RED && value > bestValue) {
-                    bestValue = value;
-                    bestRow = i;
-                    bestColumn = j;
-                }
-                else if(team == BLUE && value < bestValue) {
-                    bestValue = value;
-                    bestRow = i;
-                    bestColumn = j;
-                }
+     * @param position
+     *            the board to move on
+     * @param colour
+     *            the colour to move
+     * @param timeLimit
+     *            the time in milliseconds the move may take, or 0 for no limit
+     * @param nodeLimit
+     *            the most nodes the move may take, or 0 for no limit. The first depth always finishes, the deeper ones give every thread an equal share.
+     * @param pondering
+     *            true if the search is on the opponent's time, so it must leave the value and the counters of Bee's last move as they are
+     * @return the point containing the move coordinates, or (-1, -1) if the search was stopped before finding a move
+     */
+    private Point getBestMove(BitBoard position, int colour, long timeLimit, long nodeLimit, boolean pondering) {
+        long start = System.nanoTime();
+        boolean timed = listener != null;
+        int reached = 0;
+        if(searches[0] == null) searches[0] = new BeeSearch(this, gridSize, maxDepth, beamSize, table);
+        for(BeeSearch search : searches) {
+            if(search == null) continue;
+            search.resetStatistics();
+            search.setTimed(timed);
+        }
+
+        // The counters are those of Bee's last move, not of a search on the opponent's time
+        if(!pondering) {
+            depthReached = 0;
+            nodes = 0;
+            cutoffs = 0;
+            reorderedCutoffs = 0;
+            solvedNodes = 0;
+            solveTime = 0;
+            proofSize = 0;
+        }
+
+        // Late in the game, a proven win is played at once. The solve
+        // counts against the move's time and nodes, but the first depth
+        // of the search below always finishes, so there is a move to make.
+        deadline = start + timeLimit * 1000000;
+        deadlineSet = timeLimit > 0;
+        Point winningMove = null;
+        if(solvable(position)) {
+            winningMove = solve(position, colour, nodeLimit, pondering);
+            if(nodeLimit > 0) nodeLimit = Math.max(1, nodeLimit - solver.nodes());
+        }
+        deadlineSet = false;
+        if(winningMove != null) return winningMove;
+
+        if(!tableShared) table.newSearch();
+
+        // Lists the moves worth searching: every empty cell, less the dead cells
+        // and, when the opponent threatens to win, the cells that do not stop it
+        int width = position.width();
+        long[] empty = new long[position.words()];
+        searches[0].setPosition(position, colour, maxDepth);
+        searches[0].rootMoves(colour, empty);
+        int moveCount = 0;
+        int[] moves = new int[position.cells()];
+        for(int cell = BitBoard.next(empty, 0); cell >= 0; cell = BitBoard.next(empty, cell + 1)) {
+            moves[moveCount++] = cell;
+        }
+        moves = Arrays.copyOf(moves, moveCount);
+
+        // The order the moves are tried in, initially
+        // from best to worst by their two-distances
+        int[] order = firstOrder(position, moves);
+
+        // With a time or node limit, searches one depth deeper at a time.
+        // The first search always finishes, so there is a move to make.
+        int[] values = new int[moveCount];
+        int best = -1;
+        int firstDepth = timeLimit > 0 || nodeLimit > 0 ? 1 : maxDepth;
+        long searchNodeLimit = Long.MAX_VALUE;
+        for(int depth = firstDepth; depth <= maxDepth; depth++) {
+            int searchBest = searchRoot(position, colour, depth, moves, order, values, searchNodeLimit);
+            if(searchBest < 0) break;
+            best = searchBest;
+            reached = depth;
+            if(DEBUG) System.out.println("Depth " + depth + " done after " + (System.nanoTime() - start) / 1000000 + "ms");
+
+            if(depth == firstDepth && timeLimit > 0) deadlineSet = true;
+            if(depth == firstDepth && nodeLimit > 0) searchNodeLimit = nodeLimit / threads;
+            if(depth < maxDepth) orderMoves(order, values);
+        }
+        deadlineSet = false;
+        if(!pondering) {
+            depthReached = reached;
+            value = best < 0 ? 0 : values[best];
+            for(BeeSearch search : searches) {
+                if(search == null) continue;
+                nodes += search.nodes();
+                cutoffs += search.cutoffs();
+                reorderedCutoffs += search.reorderedCutoffs();
             }
+            if(DEBUG) System.out.println("Nodes: " + nodes + ", cutoffs: " + cutoffs + ", from killer moves and history: " + reorderedCutoffs);
         }
 
+        int bestRow = best < 0 ? -1 : moves[best] / width;
+        int bestColumn = best < 0 ? -1 : moves[best] % width;
         if(DEBUG) {
-            System.out.println("Move: " + bestColumn + "," + (pieces.length - 1 - bestRow));
-            for(int i = 0; i < pieces.length; i++) {
-                for(int j = 0; j < pieces.length; j++) {
+            System.out.println("Move: " + bestColumn + "," + (width - 1 - bestRow));
+            int[][] tempValueArray = new int[width][width];
+            for(int k = 0; k < moveCount; k++) {
+                tempValueArray[moves[k] % width][width - 1 - moves[k] / width] = values[k];
+            }
+            for(int i = 0; i < width; i++) {
+                for(int j = 0; j < width; j++) {
                     System.out.print(tempValueArray[i][j] + ",");
                 }
                 System.out.println();
@@ -183,481 +484,305 @@ public class BeeGameAI extends AI {
     }
 
     /**
-     * Evaluates the current branch of the game tree.
+     * Gathers the metrics of the last move from the searches
      * 
-     * @param depth
-     *            the depth of the current branch
-     * @param previousBest
-     *            the best move value of parallel branches
-     * @param currentColour
-     *            the player colour to which the current branch corresponds to
-     * @return the value of the current branch
-     */
-    private int expand(int depth, int previousBest, int currentColour, EvaluationNode[][] nodesArray) {
-        // Break early if the move is no longer needed
-        if(getSkipMove()) return 0;
-
-        // If depth is maximum depth, evaluates the branch using
-        // a board evaluation instead of expanding it.
-        if(depth == maxDepth) return evaluate();
-        int bestValue = currentColour == RED ? Integer.MIN_VALUE : Integer.MAX_VALUE;
-
-        // Gets all the moves possible to make.
-        Iterator<Move> iter = getMoves().iterator();
-
-        // Considers only the several best moves that are possible to make.
-        for(int i = 0; i < beamSize && iter.hasNext(); i++) {
-            // Gets the move value of the next move.
-            Move nextMove = iter.next();
-            pieces[nextMove.row][nextMove.column] = currentColour;
-            int value = expand(depth + 1, bestValue, currentColour == RED ? BLUE : RED, nodesArray);
-            pieces[nextMove.row][nextMove.column] = 0;
-
-            // Compares the last move to the best move so far
-            // and records the move if it is better.
-            if(currentColour == RED && value > bestValue) bestValue = value;
-            else if(currentColour == BLUE && value < bestValue) bestValue = value;
-
-            // If the current move makes the whole branch
-            // too worthless to be better than any of the parallel branches,
-            // stops expanding it.
-            if(currentColour == RED && bestValue > previousBest || currentColour == BLUE && bestValue < previousBest) return bestValue;
+     * @param colour
+     *            the colour the move was for
+     * @param time
+     *            the time the move took, in nanoseconds
+     * @param allocated
+     *            the bytes this thread had allocated before the move, or -1 if they are not counted
+     */
+    private SearchMetrics metrics(int colour, long time, long allocated) {
+        SearchMetrics metrics = new SearchMetrics(getName(), gridSize, colour, maxDepth);
+        long allocatedNow = allocated < 0 ? -1 : Allocations.currentThread();
+        metrics.allocatedBytes = allocatedNow < 0 ? -1 : allocatedNow - allocated;
+        metrics.depth = depthReached;
+        metrics.solverNodes = solvedNodes;
+        metrics.time = time;
+        for(BeeSearch search : searches) {
+            if(search != null) search.addStatistics(metrics);
         }
+        return metrics;
+    }
 
-        // If no moves are possible at this depth,
-        // returns the evaluation of the board.
-        if(bestValue == Integer.MAX_VALUE || bestValue == Integer.MIN_VALUE) bestValue = evaluate();
-        return bestValue;
-    }
-
-    private ArrayList<Move> getMoves() {
-        // Builds the evaluation board for the current position
-        nodesArray = new EvaluationNode[pieces.length][pieces.length];
-        EvaluationNode.buildEvaluationBoard(pieces, nodesArray);
-
-        // Generates the four two-distance arrays.
-        int[][] redA = new int[pieces.length][pieces.length];
-        int[][] redB = new int[pieces.length][pieces.length];
-        int[][] blueA = new int[pieces.length][pieces.length];
-        int[][] blueB = new int[pieces.length][pieces.length];
-        for(int i = 0; i < pieces.length; i++) {
-            for(int j = 0; j < pieces.length; j++) {
-                redA[i][j] = 100000;
-                redB[i][j] = 100000;
-                blueA[i][j] = 100000;
-                blueB[i][j] = 100000;
-            }
-        }
-        // Sets the lower corners to 0 and builds
-        // the two-distance array from there.
-        redA[0][0] = 0;
-        redA[redA.length - 1][0] = 0;
-        redB[0][redB.length - 1] = 0;
-        redB[redB.length - 1][redB.length - 1] = 0;
-        blueA[0][0] = 0;
-        blueA[0][blueA.length - 1] = 0;
-        blueB[blueB.length - 1][0] = 0;
-        blueB[blueB.length - 1][blueB.length - 1] = 0;
-
-        // Builds the first RED two-distance array
-        boolean found = true;
-        while(found) {
-            found = false;
-            // Considers every position on the board
-            // and checks if it is possible to update it.
-            for(int j = 1; j < redA.length - 1; j++) {
-                for(int i = 1; i < redA.length - 1; i++) {
-                    if(redA[i][j] != 100000) continue;
-                    if(pieces[i][j] != 0) continue;
-
-                    // Updates the position by considering all
-                    // of its neighbours and assigning
-                    // the two-distance value of 1 more
-                    // than the second minimum value of its neighbours.
-                    int min = 100000;
-                    int secondMin = 100000;
-                    Iterator<EvaluationNode> iter = nodesArray[i][j].redNeighbours.iterator();
-
-                    while(iter.hasNext()) {
-
-                        EvaluationNode next = iter.next();
-                        int number = redA[next.row][next.column];
-                        if(number < secondMin) {
-                            secondMin = number;
-                            if(number < min) {
-                                secondMin = min;
-                                min = number;
-                            }
-                        }
-                    }
-                    if(secondMin < 100) {
-                        if(redA[i][j] != secondMin + 1) {
-                            found = true;
-                            redA[i][j] = secondMin + 1;
-                        }
-                    }
-                }
-            }
+    /**
+     * Checks if few enough cells are empty to try to solve a position
+     */
+    private boolean solvable(BitBoard position) {
+        long[] empty = new long[position.words()];
+        position.emptyInterior(empty);
+        int emptyCount = 0;
+        for(long word : empty) {
+            emptyCount += Long.bitCount(word);
         }
+        return emptyCount < solverEmptyCells;
+    }
 
-        // Builds the second RED two-distance array
-        found = true;
-        while(found) {
-            found = false;
-            for(int j = redB.length - 2; j > 0; j--) {
-                for(int i = 1; i < redB.length - 1; i++) {
-                    if(redB[i][j] != 100000) continue;
-                    if(pieces[i][j] != 0) continue;
-                    int min = 100000;
-                    int secondMin = 100000;
-                    Iterator<EvaluationNode> iter = nodesArray[i][j].redNeighbours.iterator();
-
-                    while(iter.hasNext()) {
-                        EvaluationNode next = iter.next();
-                        int number = redB[next.row][next.column];
-                        if(number < secondMin) {
-                            secondMin = number;
-                            if(number < min) {
-                                secondMin = min;
-                                min = number;
-                            }
-                        }
-                    }
-                    if(secondMin < 100) {
-                        if(redB[i][j] != secondMin + 1) {
-                            found = true;
-                            redB[i][j] = secondMin + 1;
-                        }
-                    }
-                }
-            }
+    /**
+     * Tries to prove the colour to move wins a position
+     * 
+     * @param position
+     *            the board to move on
+     * @param colour
+     *            the colour to move
+     * @param nodeLimit
+     *            the most nodes the solve may take, if less than the solver's own budget, or 0
+     * @param pondering
+     *            true if the solve is on the opponent's time, so it must leave the counters of Bee's last move as they are
+     * @return the winning move, or null if none was proven
+     */
+    private Point solve(BitBoard position, int colour, long nodeLimit, boolean pondering) {
+        if(solver == null) solver = new ProofSolver(this, gridSize);
+        int result = solver.solve(position, colour, nodeLimit > 0 ? Math.min(solverNodes, nodeLimit) : solverNodes);
+        if(DEBUG) System.out.println("Solver: " + (result == ProofSolver.WIN ? "win" : result == ProofSolver.LOSS ? "loss" : "unknown") + " after " + solver.nodes() + " nodes, proof size " + solver.proofSize());
+        if(!pondering) {
+            solvedNodes = solver.nodes();
+            solveTime = solver.time();
+            proofSize = solver.proofSize();
         }
+        if(result != ProofSolver.WIN) return null;
 
-        // Builds the first BLUE two-distance array
-        found = true;
-        while(found) {
-            found = false;
-            for(int i = 1; i < blueA.length - 1; i++) {
-                for(int j = 1; j < blueA.length - 1; j++) {
-                    if(blueA[i][j] != 100000) continue;
-                    if(pieces[i][j] != 0) continue;
-                    int min = 100000;
-                    int secondMin = 100000;
-                    Iterator<EvaluationNode> iter = nodesArray[i][j].blueNeighbours.iterator();
-
-                    while(iter.hasNext()) {
-                        EvaluationNode next = iter.next();
-                        int number = blueA[next.row][next.column];
-                        if(number < secondMin) {
-                            secondMin = number;
-                            if(number < min) {
-                                secondMin = min;
-                                min = number;
-                            }
-                        }
-                    }
-                    if(secondMin < 100) {
-                        if(blueA[i][j] != secondMin + 1) {
-                            found = true;
-                            blueA[i][j] = secondMin + 1;
-                        }
-                    }
-                }
-            }
-        }
-        // Builds the second BLUE two-distance array
-        found = true;
-        while(found) {
-            found = false;
-            for(int i = 1; i < blueB.length - 1; i++) {
-                for(int j = blueB.length - 2; j > 0; j--) {
-                    if(blueB[i][j] != 100000) continue;
-                    if(pieces[i][j] != 0) continue;
-                    int min = 100000;
-                    int secondMin = 100000;
-                    Iterator<EvaluationNode> iter = nodesArray[i][j].blueNeighbours.iterator();
-
-                    while(iter.hasNext()) {
-                        EvaluationNode next = iter.next();
-                        int number = blueB[next.row][next.column];
-                        if(number < secondMin) {
-                            secondMin = number;
-                            if(number < min) {
-                                secondMin = min;
-                                min = number;
-                            }
-                        }
-                    }
-                    if(secondMin < 100) {
-                        if(blueB[i][j] != secondMin + 1) {
-                            found = true;
-                            blueB[i][j] = secondMin + 1;
-                        }
-                    }
-                }
-            }
-        }
-        ArrayList<Move> moves = new ArrayList<Move>();
-
-        // Adds each move to the moves array
-        // with the move value of the sum of its two-distances.
-        for(int i = 1; i < pieces.length - 1; i++) {
-            for(int j = 1; j < pieces.length - 1; j++) {
-                if(pieces[i][j] != 0) continue;
-                moves.add(new Move(i, j, redA[i][j] + redB[i][j] + blueA[i][j] + blueB[i][j]));
-            }
-        }
-        // Sorts the moves in order from best to worst.
-        Collections.sort(moves);
-        return moves;
+        int cell = solver.winningMove();
+        if(!pondering) value = BeeSearch.INFINITY;
+        return new Point(cell / position.width(), cell % position.width());
     }
 
     /**
-     * Evaluates the current board.
+     * Searches a position to Bee's full depth, without playing the move. Used to build opening books.
      * 
-     * @return the board value
-     */
-    private int evaluate() {
-        // Checks if the board has been
-        // evaluated before and if it has, returns the previous value.
-        Integer piecesString = piecesString();
-        Integer piecesValue = lookUpTable.get(piecesString);
-        if(piecesValue != null) return piecesValue.intValue();
-
-        // Builds the evaluation board for the current position
-        nodesArray = new EvaluationNode[pieces.length][pieces.length];
-        EvaluationNode.buildEvaluationBoard(pieces, nodesArray);
-
-        // Builds the four two-distance arrays.
-        int[][] redA = new int[pieces.length][pieces.length];
-        int[][] redB = new int[pieces.length][pieces.length];
-        int[][] blueA = new int[pieces.length][pieces.length];
-        int[][] blueB = new int[pieces.length][pieces.length];
-        for(int i = 0; i < pieces.length; i++) {
-            for(int j = 0; j < pieces.length; j++) {
-                redA[i][j] = 100000;
-                redB[i][j] = 100000;
-                blueA[i][j] = 100000;
-                blueB[i][j] = 100000;
-            }
-        }
+     * @param position
+     *            the board to move on, with Bee to move
+     * @return the cell of the best move, or -1 if there is none
+     */
+    int searchPosition(BitBoard position) {
+        Point bestMove = getBestMove(position, team, 0, 0, false);
+        return bestMove.x < 0 ? -1 : position.cell(bestMove.x, bestMove.y);
+    }
 
-        // Sets the four corners of the arrays to 0 and builds from there.
-        redA[0][0] = 0;
-        redA[redA.length - 1][0] = 0;
-        redB[0][redB.length - 1] = 0;
-        redB[redB.length - 1][redB.length - 1] = 0;
-        blueA[0][0] = 0;
-        blueA[0][blueA.length - 1] = 0;
-        blueB[blueB.length - 1][0] = 0;
-        blueB[blueB.length - 1][blueB.length - 1] = 0;
-
-        // Builds the first RED two-distance array
-        boolean found = true;
-        while(found) {
-            found = false;
-            // Considers every position on the board
-            // and checks if it is possible to update it.
-            for(int j = 1; j < redA.length - 1; j++) {
-                for(int i = 1; i < redA.length - 1; i++) {
-                    if(redA[i][j] != 100000) continue;
-                    if(pieces[i][j] != 0) continue;
-
-                    // Updates the position by considering
-                    // all of its neighbours and assigning
-                    // the two-distance value of 1 more
-                    // than the second minimum value of its neighbours.
-                    int min = 100000;
-                    int secondMin = 100000;
-                    Iterator<EvaluationNode> iter = nodesArray[i][j].redNeighbours.iterator();
-
-                    while(iter.hasNext()) {
-
-                        EvaluationNode next = iter.next();
-                        int number = redA[next.row][next.column];
-                        if(number < secondMin) {
-                            secondMin = number;
-                            if(number < min) {
-                                secondMin = min;
-                                min = number;
-                            }
-                        }
-                    }
-                    if(secondMin < 100) {
-                        if(redA[i][j] != secondMin + 1) {
-                            found = true;
-                            redA[i][j] = secondMin + 1;
-                        }
-                    }
-                }
-            }
+    /**
+     * Returns the line Bee expects to follow a move it chose: the move, then the best move the transposition table holds for each position after it, for as long
+     * as the table knows one and at most Bee's depth
+     * 
+     * @param position
+     *            the position the move was chosen in
+     * @param move
+     *            the move
+     */
+    List<Point> principalLine(Position position, Point move) {
+        List<Point> line = new ArrayList<Point>();
+        BitBoard board = position.toBitBoard();
+        Zobrist zobrist = Zobrist.forSize(gridSize);
+        int colour = position.getTeam();
+        long hash = zobrist.hash(board);
+        if(colour == BLUE) hash ^= zobrist.side();
+
+        // A swap is the end of the line, since the table
+        // only knows moves onto empty cells
+        int cell = position.toBitBoard(move);
+        line.add(move);
+        while(board.isEmpty(cell) && line.size() <= maxDepth) {
+            board.set(cell, colour);
+            hash ^= zobrist.key(cell, colour) ^ zobrist.side();
+            colour = colour == RED ? BLUE : RED;
+
+            long entry = table.probe(hash);
+            if(entry == TranspositionTable.MISS) break;
+            cell = TranspositionTable.move(entry);
+            if(cell == TranspositionTable.NO_MOVE || cell >= board.cells() || !board.isEmpty(cell)) break;
+            line.add(position.fromBitBoard(cell));
         }
+        return line;
+    }
 
-        // Builds the second RED two-distance array
-        found = true;
-        while(found) {
-            found = false;
-            for(int j = redB.length - 2; j > 0; j--) {
-                for(int i = 1; i < redB.length - 1; i++) {
-                    if(redB[i][j] != 100000) continue;
-                    if(pieces[i][j] != 0) continue;
-                    int min = 100000;
-                    int secondMin = 100000;
-                    Iterator<EvaluationNode> iter = nodesArray[i][j].redNeighbours.iterator();
-
-                    while(iter.hasNext()) {
-                        EvaluationNode next = iter.next();
-                        int number = redB[next.row][next.column];
-                        if(number < secondMin) {
-                            secondMin = number;
-                            if(number < min) {
-                                secondMin = min;
-                                min = number;
-                            }
-                        }
-                    }
-                    if(secondMin < 100) {
-                        if(redB[i][j] != secondMin + 1) {
-                            found = true;
-                            redB[i][j] = secondMin + 1;
-                        }
-                    }
-                }
-            }
+    /**
+     * Orders the moves from best to worst by the sum of their two-distances, the same way the search orders the moves deeper in the tree. The first search
+     * must already be set to the position.
+     * 
+     * @param position
+     *            the board to move on
+     * @param moves
+     *            the cells of the moves, in board order
+     * @return the order to try the moves in, as indices into moves
+     */
+    private int[] firstOrder(BitBoard position, int[] moves) {
+        int[] cells = new int[position.cells()];
+        int count = searches[0].orderedMoves(cells);
+        int[] order = new int[moves.length];
+        int ordered = 0;
+        for(int k = 0; k < count; k++) {
+            int index = Arrays.binarySearch(moves, cells[k]);
+            if(index >= 0) order[ordered++] = index;
         }
+        return order;
+    }
 
-        // Builds the first BLUE two-distance array
-        found = true;
-        while(found) {
-            found = false;
-            for(int i = 1; i < blueA.length - 1; i++) {
-                for(int j = 1; j < blueA.length - 1; j++) {
-                    if(blueA[i][j] != 100000) continue;
-                    if(pieces[i][j] != 0) continue;
-                    int min = 100000;
-                    int secondMin = 100000;
-                    Iterator<EvaluationNode> iter = nodesArray[i][j].blueNeighbours.iterator();
-
-                    while(iter.hasNext()) {
-                        EvaluationNode next = iter.next();
-                        int number = blueA[next.row][next.column];
-                        if(number < secondMin) {
-                            secondMin = number;
-                            if(number < min) {
-                                secondMin = min;
-                                min = number;
-                            }
-                        }
-                    }
-                    if(secondMin < 100) {
-                        if(blueA[i][j] != secondMin + 1) {
-                            found = true;
-                            blueA[i][j] = secondMin + 1;
-                        }
-                    }
-                }
+    /**
+     * Evaluates how good every move is by expanding the game tree to the given depth, spreading the moves over the threads. Every thread takes the next move that
+     * has not been taken yet, so the moves are started in order. This thread searches too.
+     * 
+     * @param position
+     *            the board to move on
+     * @param colour
+     *            the colour to move
+     * @param depth
+     *            the depth to search to
+     * @param moves
+     *            the cells of the moves
+     * @param order
+     *            the order to try the moves in, as indices into moves
+     * @param values
+     *            the array to store the value of each move in, for the colour to move. Only the best move's value is exact, the others may be upper bounds.
+     * @param nodeLimit
+     *            the nodes each thread may have expanded since the start of the move before it gives up
+     * @return the index of the first of the best moves in board order, or -1 if the search was stopped
+     */
+    private int searchRoot(BitBoard position, int colour, int depth, int[] moves, int[] order, int[] values, long nodeLimit) {
+        AtomicInteger nextMove = new AtomicInteger();
+        AtomicInteger searched = new AtomicInteger();
+        AtomicLong sharedBest = new AtomicLong(Long.MIN_VALUE);
+        int workers = Math.min(threads, moves.length);
+        RootSearch[] tasks = new RootSearch[workers];
+        // The bytes allocated on this thread are counted by chooseMove()
+        Thread owner = listener == null ? null : Thread.currentThread();
+        for(int i = 0; i < workers; i++) {
+            if(searches[i] == null) {
+                searches[i] = new BeeSearch(this, gridSize, maxDepth, beamSize, table);
+                searches[i].setTimed(owner != null);
             }
+            searches[i].setNodeLimit(nodeLimit);
+            tasks[i] = new RootSearch(searches[i], position, colour, depth, moves, order, values, nextMove, searched, sharedBest, owner);
+        }
+        for(int i = 1; i < workers; i++) {
+            getPool().execute(tasks[i]);
         }
+        if(workers > 0) tasks[0].invoke();
+        for(int i = 1; i < workers; i++) {
+            tasks[i].join();
+        }
+        if(searched.get() < moves.length) return -1;
+        return moves.length == 0 ? -1 : Integer.MAX_VALUE - (int) sharedBest.get();
+    }
 
-        // Builds the second BLUE two-distance array
-        found = true;
-        while(found) {
-            found = false;
-            for(int i = 1; i < blueB.length - 1; i++) {
-                for(int j = blueB.length - 2; j > 0; j--) {
-                    if(blueB[i][j] != 100000) continue;
-                    if(pieces[i][j] != 0) continue;
-                    int min = 100000;
-                    int secondMin = 100000;
-                    Iterator<EvaluationNode> iter = nodesArray[i][j].blueNeighbours.iterator();
-
-                    while(iter.hasNext()) {
-                        EvaluationNode next = iter.next();
-                        int number = blueB[next.row][next.column];
-                        if(number < secondMin) {
-                            secondMin = number;
-                            if(number < min) {
-                                secondMin = min;
-                                min = number;
-                            }
-                        }
-                    }
-                    if(secondMin < 100) {
-                        if(blueB[i][j] != secondMin + 1) {
-                            found = true;
-                            blueB[i][j] = secondMin + 1;
-                        }
-                    }
-                }
-            }
+    /**
+     * Orders the moves from best to worst by the values of the last search, so the next search finds a good bound early
+     */
+    private void orderMoves(int[] order, int[] values) {
+        long[] keys = new long[order.length];
+        for(int k = 0; k < order.length; k++) {
+            keys[k] = -(long) values[k] << 32 | k;
         }
-        // Calculates the potentials and the mobility.
-        // The potential of a board for a
-        // particular colour is the smallest
-        // two-distance value that occurs on
-        // the sum of the boards corresponding to that colour.
-        // The mobility of a board for a
-        // particular colour is how many times
-        // the smallest two-distance value occurs on
-        // the sum of the boards corresponding to that colour.
-        int redPotential = 100000;
-        int bluePotential = 100000;
-        int redMobility = 0;
-        int blueMobility = 0;
-        for(int i = 1; i < redA.length - 1; i++) {
-            for(int j = 1; j < redA.length - 1; j++) {
-                if(pieces[i][j] == 0) {
-                    if(redA[i][j] + redB[i][j] < redPotential) {
-                        redPotential = redA[i][j] + redB[i][j];
-                        redMobility = 1;
-                    }
-                    else if(redA[i][j] + redB[i][j] == redPotential) redMobility++;
-                    if(blueA[i][j] + blueB[i][j] < bluePotential) {
-                        bluePotential = blueA[i][j] + blueB[i][j];
-                        blueMobility = 1;
-                    }
-                    else if(blueA[i][j] + blueB[i][j] == bluePotential) blueMobility++;
-                }
-            }
+        Arrays.sort(keys);
+        for(int k = 0; k < order.length; k++) {
+            order[k] = (int) keys[k];
         }
+    }
 
-        // Stores the value of the current board in
-        // the look-up table for future use.
-        lookUpTable.put(piecesString, 100 * (bluePotential - redPotential) - (blueMobility - redMobility));
+    /**
+     * Checks if the search should stop, because the move is no longer needed, its time has run out or the opponent has moved while pondering
+     */
+    boolean searchStopped() {
+        return getSkipMove() || stopRequested || ponderStopped || deadlineSet && System.nanoTime() - deadline >= 0;
+    }
 
-        // Returns the value of the board.
-        return 100 * (bluePotential - redPotential) - (blueMobility - redMobility);
+    /**
+     * Stops the search running on another thread, or lets searches run again. A stopped chooseMove() returns the move of the deepest search that finished, or
+     * null if none did.
+     */
+    void setStopRequested(boolean stopRequested) {
+        this.stopRequested = stopRequested;
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if(pool == null) pool = new ForkJoinPool(DEFAULT_THREADS);
+        return pool;
     }
 
     /**
-     * Creates a BigInteger representation of the current board to use in the look-up table
+     * Evaluates moves from the root of the game tree on one thread.
      * 
-     * @return the BigInteger representation
-     */
-    private Integer piecesString() {
-        Integer value = pieces.length - 2;
-        for(int i = 1; i < pieces.length - 1; i++) {
-            for(int j = 1; j < pieces.length - 1; j++) {
-                value *= 3;
-                value += pieces[i][j];
+     * The threads share the best move found so far, as (value << 32 | Integer.MAX_VALUE - index) so that of two equal moves the first in board order is the
+     * larger. Every move is searched with the best move at the time it is started as its bound: a move before it in board order has to tie it, a move after it
+     * has to beat it. A move that can not gets cut off with a value that is no better, while a move that can is searched exactly. The best move is therefore the
+     * first of the best moves in board order, whatever order the moves were searched in.
+     */
+    private class RootSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final BeeSearch search;
+        private final BitBoard position;
+        private final int colour;
+        private final int depth;
+        private final int[] moves;
+        private final int[] order;
+        private final int[] values;
+        private final AtomicInteger nextMove;
+        private final AtomicInteger searched;
+        private final AtomicLong sharedBest;
+        // The thread that started the move, if allocations are counted
+        private final Thread owner;
+
+        RootSearch(BeeSearch search, BitBoard position, int colour, int depth, int[] moves, int[] order, int[] values, AtomicInteger nextMove, AtomicInteger searched, AtomicLong sharedBest, Thread owner) {
+            this.search = search;
+            this.position = position;
+            this.colour = colour;
+            this.depth = depth;
+            this.moves = moves;
+            this.order = order;
+            this.values = values;
+            this.nextMove = nextMove;
+            this.searched = searched;
+            this.sharedBest = sharedBest;
+            this.owner = owner;
+        }
+
+        @Override
+        protected void compute() {
+            long allocated = owner != null && owner != Thread.currentThread() ? Allocations.currentThread() : -1;
+            searchMoves();
+            if(allocated >= 0) search.addAllocatedBytes(Allocations.currentThread() - allocated);
+        }
+
+        /**
+         * Takes moves and searches them until every move is taken or the search is stopped
+         */
+        private void searchMoves() {
+            search.setPosition(position, colour, depth);
+            for(int next = nextMove.getAndIncrement(); next < order.length && !search.stopped(); next = nextMove.getAndIncrement()) {
+                int k = order[next];
+                long best = sharedBest.get();
+                int alpha = -BeeSearch.INFINITY;
+                if(best != Long.MIN_VALUE) {
+                    int bestValue = (int) (best >> 32);
+                    alpha = k < Integer.MAX_VALUE - (int) best ? bestValue - 1 : bestValue;
+                }
+                int value = search.searchMove(moves[k], colour, alpha);
+
+                // The value of a search that was stopped is meaningless
+                if(search.stopped()) break;
+                values[k] = value;
+                searched.incrementAndGet();
+
+                // Shares the move if it is the best one so far.
+                // Only a move that beat its bound has an exact value.
+                if(value <= alpha) continue;
+                long key = (long) value << 32 | Integer.MAX_VALUE - k;
+                while(key > best) {
+                    if(sharedBest.compareAndSet(best, key)) break;
+                    best = sharedBest.get();
+                }
             }
         }
-        return value;
     }
 
     @Override
     public Serializable getSaveState() {
-        return history;
+        return history.copy();
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void setSaveState(Serializable state) {
-        List<AIHistoryObject> history = (List<AIHistoryObject>) state;
-        this.history.clear();
-        for(AIHistoryObject ho : history) {
-            this.history.add(ho);
-        }
+        history.copyFrom((UndoLog) state);
+        history.replay(board);
         undoCalled();
     }
 
@@ -672,178 +797,31 @@ public class BeeGameAI extends AI {
     }
 
     @Override
-    public void win() {}
-
-    @Override
-    public void lose(Game game) {}
-
-    @Override
-    public void startGame() {}
-
-    @Override
-    public void newgameCalled() {
-        super.newgameCalled();
-        pieces = new int[gridSize + 2][gridSize + 2];
-        for(int i = 1; i < pieces.length - 1; i++) {
-            pieces[i][0] = RED;
-            pieces[0][i] = BLUE;
-            pieces[i][pieces.length - 1] = RED;
-            pieces[pieces.length - 1][i] = BLUE;
-        }
-        lookUpTable = new HashMap<Integer, Integer>();
-    }
-}
-
-/**
- * The "Move" class. Purpose: Stores a move
- * 
- * @author Konstantin Lopyrev
- * @version June 2006
- */
-class Move implements Comparable<Move> {
-    public int row;
-    public int column;
-    private final int value;
-
-    /**
-     * Constructor for the Move class
-     * 
-     * @param row
-     *            the row of the move
-     * @param column
-     *            the column of the move
-     * @param value
-     *            the value of the move
-     */
-    public Move(int row, int column, int value) {
-        this.row = row;
-        this.column = column;
-        this.value = value;
+    public void win() {
+        stopPondering();
     }
 
-    /**
-     * Compares this move to another object by value
-     * 
-     * @param other
-     *            the object to compare to
-     * @return 0 if equals, -ve if less than, +ve if greater than
-     */
     @Override
-    public int compareTo(Move other) {
-        return this.value - other.value;
+    public void lose(Game game) {
+        stopPondering();
     }
-}
 
-/**
- * The "EvaluationNode" class. Purpose: Stores the neighbours of each piece on the Hex board
- * 
- * @author Konstantin Lopyrev
- * @version June 2006
- */
-class EvaluationNode implements Serializable {
-    private static final long serialVersionUID = 1L;
-    public HashSet<EvaluationNode> redNeighbours;
-    public HashSet<EvaluationNode> blueNeighbours;
-    public int row;
-    public int column;
-
-    /**
-     * Constructor for the EvaluationNode class.
-     * 
-     * @param row
-     *            the row of the piece
-     * @param column
-     *            the column of the piece
-     */
-    public EvaluationNode(int row, int column) {
-        this.row = row;
-        this.column = column;
-        redNeighbours = new HashSet<EvaluationNode>();
-        blueNeighbours = new HashSet<EvaluationNode>();
-    }
-
-    /**
-     * Creates the evaluation board for the corresponding pieces board
-     * 
-     * @param pieces
-     *            the corresponding pieces board
-     */
-    public static void buildEvaluationBoard(int[][] pieces, EvaluationNode[][] nodesArray) {
-        // Initially creates all the EvaluationNodes without their neighbours
-        for(int i = 0; i < nodesArray.length; i++)
-            for(int j = 0; j < nodesArray.length; j++)
-                nodesArray[i][j] = new EvaluationNode(i, j);
-
-        // Builds the neighbours of each EvaluationNode
-        for(int i = 0; i < nodesArray.length; i++)
-            for(int j = 0; j < nodesArray.length; j++) {
-                if(pieces[i][j] != 0) continue;
-                nodesArray[i][j].redNeighbours = nodesArray[i][j].getNeighbours(1, new HashSet<EvaluationNode>(), nodesArray, pieces);
-                nodesArray[i][j].redNeighbours.remove(nodesArray[i][j]);
-                nodesArray[i][j].blueNeighbours = nodesArray[i][j].getNeighbours(2, new HashSet<EvaluationNode>(), nodesArray, pieces);
-                nodesArray[i][j].blueNeighbours.remove(nodesArray[i][j]);
-            }
-    }
-
-    /**
-     * Recursive method which returns the neighbours of a piece
-     * 
-     * @param colour
-     *            the current colour
-     * @param piecesVisited
-     *            stores the pieces that have been visited already so that they are not touched again
-     * @return the neighbours of the piece in a HashSet
-     */
-    private HashSet<EvaluationNode> getNeighbours(int colour, HashSet<EvaluationNode> piecesVisited, EvaluationNode[][] nodesArray, int[][] pieces) {
-        // If the current piece has been visited already,
-        // returns an empty HashSet
-        if(piecesVisited.contains(this)) return new HashSet<EvaluationNode>();
-        HashSet<EvaluationNode> returnValue = new HashSet<EvaluationNode>();
-        if(pieces[row][column] == colour) piecesVisited.add(this);
-
-        // Considers all the neighbours of the current piece.
-        for(int a = -1; a <= 1; a++) {
-            for(int b = -1; b <= 1; b++) {
-                if(a + b == 0) continue;
-                if(row + a < 0 || row + a == nodesArray.length || column + b < 0 || column + b == nodesArray.length) continue;
-
-                // If the current neighbour is empty,
-                // adds it to the neighbours list.
-                if(pieces[row + a][column + b] == 0) returnValue.add(nodesArray[row + a][column + b]);
-
-                // If the current neighbour is a piece of
-                // the opposing colour, ignores it.
-                else if(pieces[row + a][column + b] != colour) continue;
-
-                // If the current neighbour is a piece of
-                // the same colour,
-                // adds all of its neighbours to the neighbours list.
-                else returnValue.addAll(nodesArray[row + a][column + b].getNeighbours(colour, piecesVisited, nodesArray, pieces));
-            }
-        }
-        return returnValue;
-    }
+    @Override
+    public void startGame() {}
 
-    /**
-     * Returns a hashCode for the current EvaluationNode
-     * 
-     * @return the hash code
-     */
     @Override
-    public int hashCode() {
-        return row * 100 + column;
+    public void quit() {
+        super.quit();
+        stopPondering();
     }
 
-    /**
-     * Compares this EvaluationNode to another object
-     * 
-     * @param other
-     *            the object to compare to
-     * @return true if equal, false otherwise
-     */
     @Override
-    public boolean equals(Object other) {
-        EvaluationNode otherNode = (EvaluationNode) other;
-        return row == otherNode.row && column == otherNode.column;
+    public void newgameCalled() {
+        super.newgameCalled();
+        stopPondering();
+        ponderedMoves.clear();
+        history.clear();
+        board.clear();
+        table.clear();
     }
 }
@@ -0,0 +1,584 @@
+package com.hex.ai;
+
+import java.util.Arrays;
+
+/**
+ * The search state of one Bee thread: a copy of the board with its chains, two-distance arrays and Zobrist key, and the move arrays of every depth.
+ *
+ * Each thread that searches gets its own BeeSearch. The transposition table is shared between them, while the recent PositionAnalysis objects, which rank the
+ * moves of a position and hold its evaluation, are kept per thread.
+ *
+ * The tree is searched with negamax alpha-beta: every value is from the point of view of the player to move, and the first move at each node is searched with
+ * the full window while the others only have to prove they are no better, with a null window, before being searched again if they are. The Zobrist key
+ * includes the player to move, so the values in the table are from that player's point of view too. The searches are keyed by the board as it is, not by the
+ * canonical key the opening book uses: ties between moves are broken by cell, so the tree below a position is not the mirror image of the tree below its
+ * mirror image, and sharing their entries would make the move depend on which of them a thread happened to search first. The evaluation of a board depends on
+ * nothing but the board, so evaluations are keyed by the canonical key, and a board and its symmetric twins are evaluated once.
+ *
+ * The beam is always the several moves with the smallest sums of two-distances, but inside it the moves are tried hash move first, then the killer moves of
+ * the depth, the last two moves to cause a cutoff there, and then the rest in two-distance order. Between moves whose two-distances are equal, the one with
+ * the larger history, how much it has caused cutoffs anywhere, goes first.
+ */
+final class BeeSearch {
+    // Larger than any board value, and still safe to negate and add 1 to
+    static final int INFINITY = 1000000000;
+    private final static int RED = 1, BLUE = 2;
+    // The number of positions whose analysis is kept, a power of two
+    private final static int ANALYSIS_CACHE_SIZE = 256;
+
+    private final BeeGameAI ai;
+    private final int beamSize;
+    private int maxDepth;
+    private final Zobrist zobrist;
+    private final TranspositionTable table;
+
+    private final BitBoard board;
+    // The chains of the board, kept up to date while searching
+    private final Chains chains;
+    // The two-distance arrays of the board, kept up to date while searching
+    private final TwoDistance distances;
+    // The virtual connections of the board, only searched for at the root
+    private HSearch connections;
+    // The Zobrist key of the board and the player to move, kept up to date while searching,
+    // and the keys of every orientation, for the evaluations
+    private long hash;
+    private final CanonicalHash canonical;
+    // Scratch space for the empty cells of the board
+    private final long[] emptyCells;
+    // The moves of each depth of the search, as (move value << 32 | cell)
+    private final long[][] moveLists;
+    // The analyses of recent positions, indexed by their Zobrist key
+    private final PositionAnalysis[] analyses;
+    // The two most recent cutoff moves of each depth
+    private final int[][] killers;
+    // How much each move has caused cutoffs, indexed by (cell * 2 + colour - 1)
+    private final int[] history;
+    // The order score of each move in the beam
+    private final int[] scores;
+    // The nodes after which the search gives up
+    private long nodeLimit = Long.MAX_VALUE;
+
+    // Whether the time of each phase of the search is measured
+    private boolean timed;
+
+    // Counters since the last resetStatistics()
+    private long nodes;
+    private long cutoffs;
+    private long reorderedCutoffs;
+    private long evaluations;
+    private long tableHits;
+    private long tableMisses;
+    // The cutoffs at each depth
+    private final long[] depthCutoffs;
+    // The time spent in each phase, in nanoseconds, if timed
+    private long buildTime;
+    private long relaxTime;
+    private long analyseTime;
+    private long sortTime;
+    // The bytes allocated by root searches on threads other than the one that started the move
+    private long allocatedBytes;
+
+    /**
+     * Constructor for the BeeSearch class
+     * 
+     * @param ai
+     *            the Bee that is searching, asked whether the move is still needed
+     * @param gridSize
+     *            the size of the board
+     * @param depthLimit
+     *            the deepest the search will ever go
+     * @param beamSize
+     *            the number of moves tried at each depth
+     * @param table
+     *            the transposition table, shared with the other searches
+     */
+    BeeSearch(BeeGameAI ai, int gridSize, int depthLimit, int beamSize, TranspositionTable table) {
+        this.ai = ai;
+        this.maxDepth = depthLimit;
+        this.beamSize = beamSize;
+        this.table = table;
+        zobrist = Zobrist.forSize(gridSize);
+        canonical = new CanonicalHash(gridSize);
+        board = new BitBoard(gridSize);
+        chains = new Chains(board);
+        distances = new TwoDistance(board, chains);
+        emptyCells = new long[board.words()];
+        moveLists = new long[depthLimit + 1][board.cells()];
+        killers = new int[depthLimit + 1][2];
+        depthCutoffs = new long[depthLimit + 1];
+        history = new int[board.cells() * 2];
+        scores = new int[beamSize];
+        analyses = new PositionAnalysis[ANALYSIS_CACHE_SIZE];
+        for(int i = 0; i < analyses.length; i++) {
+            analyses[i] = new PositionAnalysis(board.cells());
+        }
+    }
+
+    /**
+     * Sets up the search for a new position
+     * 
+     * @param position
+     *            the board to search
+     * @param colour
+     *            the colour to move
+     * @param depth
+     *            the depth to search to, at most the depth limit
+     */
+    void setPosition(BitBoard position, int colour, int depth) {
+        maxDepth = depth;
+        board.copyFrom(position);
+        hash = zobrist.hash(board);
+        if(colour == BLUE) hash ^= zobrist.side();
+        canonical.set(board, colour);
+
+        // Builds the chains and the two-distance arrays for the position.
+        // From here on they are updated as pieces are placed and removed.
+        long start = timed ? System.nanoTime() : 0;
+        chains.rebuild();
+        distances.rebuild();
+        if(timed) buildTime += System.nanoTime() - start;
+
+        // Killer moves only make sense below the same root, while the
+        // history of older searches still counts, but for less.
+        for(int[] killer : killers) {
+            Arrays.fill(killer, TranspositionTable.NO_MOVE);
+        }
+        for(int i = 0; i < history.length; i++) {
+            history[i] >>= 1;
+        }
+    }
+
+    /**
+     * Sets the number of nodes since the last resetStatistics() after which the search gives up
+     */
+    void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Checks if the search should stop, because Bee says so or its nodes have run out
+     */
+    boolean stopped() {
+        return nodes >= nodeLimit || ai.searchStopped();
+    }
+
+    /**
+     * Sets whether the time of each phase of the search is measured, which costs a few clock reads a node
+     */
+    void setTimed(boolean timed) {
+        this.timed = timed;
+    }
+
+    /**
+     * Clears the counters of the search
+     */
+    void resetStatistics() {
+        nodes = 0;
+        cutoffs = 0;
+        reorderedCutoffs = 0;
+        evaluations = 0;
+        tableHits = 0;
+        tableMisses = 0;
+        Arrays.fill(depthCutoffs, 0);
+        buildTime = 0;
+        relaxTime = 0;
+        analyseTime = 0;
+        sortTime = 0;
+        allocatedBytes = 0;
+    }
+
+    /**
+     * Adds the counters since the last resetStatistics() to the metrics of a move
+     */
+    void addStatistics(SearchMetrics metrics) {
+        metrics.nodes += nodes;
+        metrics.evaluations += evaluations;
+        metrics.tableHits += tableHits;
+        metrics.tableMisses += tableMisses;
+        for(int depth = 0; depth < depthCutoffs.length && depth < metrics.depthCutoffs.length; depth++) {
+            metrics.depthCutoffs[depth] += depthCutoffs[depth];
+        }
+        metrics.buildTime += buildTime;
+        metrics.relaxTime += relaxTime;
+        metrics.analyseTime += analyseTime;
+        metrics.sortTime += sortTime;
+        if(metrics.allocatedBytes >= 0) metrics.allocatedBytes += allocatedBytes;
+    }
+
+    /**
+     * Adds to the bytes allocated for the move on other threads
+     */
+    void addAllocatedBytes(long bytes) {
+        allocatedBytes += bytes;
+    }
+
+    /**
+     * Returns the number of nodes expanded since the last resetStatistics()
+     */
+    long nodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of beta cutoffs since the last resetStatistics()
+     */
+    long cutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * Returns the number of beta cutoffs since the last resetStatistics() that were caused by a move the killer moves or the history tried earlier than the
+     * two-distances would have
+     */
+    long reorderedCutoffs() {
+        return reorderedCutoffs;
+    }
+
+    /**
+     * Finds the moves of the position worth searching: the empty cells that are not dead and, if the other colour threatens to connect with one more move, that
+     * stop every such threat
+     * 
+     * @param colour
+     *            the colour to move
+     * @param cells
+     *            the bitset to fill with the moves
+     */
+    void rootMoves(int colour, long[] cells) {
+        if(connections == null) connections = new HSearch(board, chains);
+        long[] region = new long[cells.length];
+        if(!connections.mustPlay(colour, region)) board.emptyInterior(region);
+        connections.removeDead(region);
+
+        // Every move is dead or blocks nothing useful, so any of them will do
+        if(BitBoard.next(region, 0) < 0) board.emptyInterior(region);
+        System.arraycopy(region, 0, cells, 0, cells.length);
+    }
+
+    /**
+     * Lists the moves of the position from best to worst, by the sum of their two-distances
+     * 
+     * @param cells
+     *            the array to fill with the cells of the moves
+     * @return the number of moves
+     */
+    int orderedMoves(int[] cells) {
+        long[] moves = moveLists[0];
+        int count = analysis().moves(moves, moves.length);
+        for(int i = 0; i < count; i++) {
+            cells[i] = (int) moves[i];
+        }
+        return count;
+    }
+
+    /**
+     * Evaluates a move from the position. The value is exact if it is more than alpha, otherwise it is only known to be at most alpha.
+     * 
+     * @param cell
+     *            the cell of the move
+     * @param colour
+     *            the colour making the move
+     * @param alpha
+     *            the value the move has to beat, or -INFINITY if there is none yet
+     * @return the value of the move for the colour making it
+     */
+    int searchMove(int cell, int colour, int alpha) {
+        int other = colour == RED ? BLUE : RED;
+        placePiece(cell, colour);
+        int value;
+        if(alpha <= -INFINITY) {
+            value = -expand(1, -INFINITY, INFINITY, other);
+        }
+        else {
+            // Proves the move is no better than alpha with a null window,
+            // and only searches it fully if it is.
+            value = -expand(1, -alpha - 1, -alpha, other);
+            if(value > alpha && maxDepth > 1) value = -expand(1, -INFINITY, -alpha, other);
+        }
+        removePiece(cell);
+        return value;
+    }
+
+    /**
+     * Evaluates the current branch of the game tree.
+     * 
+     * @param depth
+     *            the depth of the current branch
+     * @param alpha
+     *            the value the player to move already has elsewhere
+     * @param beta
+     *            the value the other player already has elsewhere, from the point of view of the player to move
+     * @param currentColour
+     *            the player colour to which the current branch corresponds to
+     * @return the value of the current branch for currentColour. Exact if it is between alpha and beta, otherwise a bound on the side of the window it is on.
+     */
+    private int expand(int depth, int alpha, int beta, int currentColour) {
+        // Break early if the move is no longer needed
+        // or the time or nodes for it have run out
+        if(stopped()) return 0;
+        nodes++;
+
+        // If depth is maximum depth, evaluates the branch using
+        // a board evaluation instead of expanding it.
+        if(depth == maxDepth) return evaluate(currentColour);
+
+        // If the last move connected its player's sides,
+        // the game is over and the branch can not be expanded.
+        int otherColour = currentColour == RED ? BLUE : RED;
+        if(chains.isConnected(otherColour)) return evaluate(currentColour);
+
+        // Checks if the branch has been expanded before. A stored value
+        // is used if it is exact, or if it is a bound that already
+        // falls outside the window.
+        int remainingDepth = maxDepth - depth;
+        int hashMove = TranspositionTable.NO_MOVE;
+        long entry = probe(hash);
+        if(entry != TranspositionTable.MISS) {
+            hashMove = TranspositionTable.move(entry);
+            if(TranspositionTable.depth(entry) >= remainingDepth) {
+                int value = TranspositionTable.value(entry);
+                int bound = TranspositionTable.bound(entry);
+                if(bound == TranspositionTable.EXACT) return value;
+                if(bound == TranspositionTable.LOWER && value >= beta) return value;
+                if(bound == TranspositionTable.UPPER && value <= alpha) return value;
+            }
+        }
+        int originalAlpha = alpha;
+        int bestValue = -INFINITY;
+        int bestMove = TranspositionTable.NO_MOVE;
+
+        // Gets the several best moves possible to make.
+        long[] moves = moveLists[depth];
+        PositionAnalysis analysis = analysis();
+        long sortStart = timed ? System.nanoTime() : 0;
+        int beam = analysis.moves(moves, beamSize);
+
+        // Tries the best move of an earlier expansion first,
+        // then the killer moves, then the rest by their history.
+        orderBeam(moves, beam, depth, hashMove, currentColour);
+        if(timed) sortTime += System.nanoTime() - sortStart;
+
+        // Considers only the several best moves that are possible to make.
+        boolean leafChildren = depth + 1 == maxDepth;
+        for(int i = 0; i < beam; i++) {
+            // Gets the cell of the next move.
+            int nextMove = (int) moves[i];
+            int value;
+
+            // If the move leads to a board that has been evaluated before,
+            // the two-distance arrays do not need to be updated for it.
+            long leaf = leafChildren ? probe(canonical.childKey(nextMove, currentColour) ^ zobrist.evaluation()) : TranspositionTable.MISS;
+            if(leaf != TranspositionTable.MISS && TranspositionTable.depth(leaf) == 0) {
+                value = -TranspositionTable.value(leaf);
+            }
+            else {
+                placePiece(nextMove, currentColour);
+                if(i == 0 || leafChildren) {
+                    value = -expand(depth + 1, -beta, -alpha, otherColour);
+                }
+                else {
+                    value = -expand(depth + 1, -alpha - 1, -alpha, otherColour);
+                    if(value > alpha && value < beta) value = -expand(depth + 1, -beta, -alpha, otherColour);
+                }
+                removePiece(nextMove);
+            }
+
+            // The value of an abandoned search is meaningless,
+            // so it must not end up in the table.
+            if(stopped()) return 0;
+
+            // Compares the last move to the best move so far
+            // and records the move if it is better.
+            if(value > bestValue) {
+                bestValue = value;
+                bestMove = nextMove;
+            }
+            if(bestValue > alpha) alpha = bestValue;
+
+            // If the current move makes the whole branch
+            // too good for the other player to allow,
+            // stops expanding it.
+            if(alpha >= beta) {
+                recordCutoff(moves, beam, i, depth, hashMove, remainingDepth, currentColour);
+                table.store(hash, bestValue, remainingDepth, TranspositionTable.LOWER, bestMove);
+                return bestValue;
+            }
+        }
+
+        // If no moves are possible at this depth,
+        // returns the evaluation of the board.
+        if(bestMove == TranspositionTable.NO_MOVE) return evaluate(currentColour);
+        table.store(hash, bestValue, remainingDepth, bestValue > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER, bestMove);
+        return bestValue;
+    }
+
+    /**
+     * Orders the moves of the beam: the hash move, then the killer moves, then the rest by their two-distances, with the history deciding between moves whose
+     * two-distances are equal
+     * 
+     * @param moves
+     *            the moves of the beam, from best to worst by their two-distances
+     * @param beam
+     *            the number of moves in the beam
+     */
+    private void orderBeam(long[] moves, int beam, int depth, int hashMove, int colour) {
+        int[] killer = killers[depth];
+        for(int i = 0; i < beam; i++) {
+            int cell = (int) moves[i];
+            int score;
+            if(cell == hashMove) score = Integer.MAX_VALUE;
+            else if(cell == killer[0]) score = Integer.MAX_VALUE - 1;
+            else if(cell == killer[1]) score = Integer.MAX_VALUE - 2;
+            else score = Math.min(history[cell * 2 + colour - 1], Integer.MAX_VALUE - 3);
+
+            // Inserts the move before the moves it is better than
+            long move = moves[i];
+            int j = i;
+            while(j > 0 && triedBefore(move, score, moves[j - 1], scores[j - 1])) {
+                moves[j] = moves[j - 1];
+                scores[j] = scores[j - 1];
+                j--;
+            }
+            moves[j] = move;
+            scores[j] = score;
+        }
+    }
+
+    /**
+     * Checks if a move of the beam should be tried before another that comes earlier in two-distance order
+     */
+    private static boolean triedBefore(long move, int score, long earlier, int earlierScore) {
+        if(score >= Integer.MAX_VALUE - 2 || earlierScore >= Integer.MAX_VALUE - 2) return score > earlierScore;
+        return move >>> 32 == earlier >>> 32 && score > earlierScore;
+    }
+
+    /**
+     * Remembers the move that caused a cutoff as a killer move of its depth and adds to its history
+     * 
+     * @param moves
+     *            the moves of the beam, in the order they were tried
+     * @param index
+     *            the index of the move that caused the cutoff
+     */
+    private void recordCutoff(long[] moves, int beam, int index, int depth, int hashMove, int remainingDepth, int colour) {
+        int cell = (int) moves[index];
+        cutoffs++;
+        depthCutoffs[depth]++;
+
+        // Counts the cutoff as extra if the move would have been
+        // tried later in two-distance order, apart from the hash move.
+        if(cell != hashMove) {
+            int rank = index;
+            int originalRank = 0;
+            for(int i = 0; i < beam; i++) {
+                if((int) moves[i] == hashMove) {
+                    if(i < index) rank--;
+                }
+                else if(moves[i] < moves[index]) originalRank++;
+            }
+            if(originalRank > rank) reorderedCutoffs++;
+        }
+
+        int[] killer = killers[depth];
+        if(killer[0] != cell) {
+            killer[1] = killer[0];
+            killer[0] = cell;
+        }
+        history[cell * 2 + colour - 1] += remainingDepth * remainingDepth;
+    }
+
+    /**
+     * Places a piece on the board and updates the Zobrist key, the chains and the two-distance arrays
+     * 
+     * @param cell
+     *            the cell of the piece
+     * @param colour
+     *            the colour of the piece
+     */
+    private void placePiece(int cell, int colour) {
+        board.set(cell, colour);
+        hash ^= zobrist.key(cell, colour) ^ zobrist.side();
+        canonical.toggle(cell, colour);
+        chains.place(cell);
+        if(timed) {
+            long start = System.nanoTime();
+            distances.place(cell, colour);
+            relaxTime += System.nanoTime() - start;
+        }
+        else {
+            distances.place(cell, colour);
+        }
+    }
+
+    /**
+     * Removes the last placed piece from the board and rolls back the Zobrist key, the chains and the two-distance arrays
+     * 
+     * @param cell
+     *            the cell of the piece
+     */
+    private void removePiece(int cell) {
+        if(timed) {
+            long start = System.nanoTime();
+            distances.undo();
+            relaxTime += System.nanoTime() - start;
+        }
+        else {
+            distances.undo();
+        }
+        chains.undo();
+        hash ^= zobrist.key(cell, board.get(cell)) ^ zobrist.side();
+        canonical.toggle(cell, board.get(cell));
+        board.set(cell, 0);
+    }
+
+    /**
+     * Returns the analysis of the current board, reusing it if the board has been analysed recently
+     */
+    private PositionAnalysis analysis() {
+        PositionAnalysis analysis = analyses[(int) hash & ANALYSIS_CACHE_SIZE - 1];
+        if(!analysis.isFor(hash)) {
+            long start = timed ? System.nanoTime() : 0;
+            analysis.analyse(hash, board, distances, emptyCells);
+            if(timed) analyseTime += System.nanoTime() - start;
+        }
+        return analysis;
+    }
+
+    /**
+     * Looks a board up in the transposition table, counting the hits and misses
+     */
+    private long probe(long key) {
+        long entry = table.probe(key);
+        if(entry == TranspositionTable.MISS) tableMisses++;
+        else tableHits++;
+        return entry;
+    }
+
+    /**
+     * Evaluates the current board.
+     * 
+     * @param colour
+     *            the colour to move
+     * @return the board value for the colour to move
+     */
+    private int evaluate(int colour) {
+        evaluations++;
+
+        // Checks if the board, or one of its symmetric twins, has been
+        // evaluated before and if it has, returns the previous value.
+        long key = canonical.key() ^ zobrist.evaluation();
+        long entry = probe(key);
+        if(entry != TranspositionTable.MISS && TranspositionTable.depth(entry) == 0) return TranspositionTable.value(entry);
+
+        // Gets the value from the potentials and the mobility,
+        // which the move ordering may already have calculated.
+        int value = analysis().value();
+        if(colour == BLUE) value = -value;
+
+        // Stores the value of the current board in
+        // the transposition table for future use.
+        table.store(key, value, 0, TranspositionTable.EXACT, TranspositionTable.NO_MOVE);
+
+        // Returns the value of the board.
+        return value;
+    }
+}
@@ -0,0 +1,240 @@
+package com.hex.ai;
+
+import java.util.Random;
+
+/**
+ * Micro-benchmarks of the AIs' hot paths, to catch performance regressions before they ship.
+ *
+ * Every benchmark runs over a fixed set of positions for each board size, made by random moves from a fixed seed, so runs on different builds measure the same
+ * work. Each one is warmed up for one iteration and then timed for several, and reports the operations per second with their spread between iterations and the
+ * bytes the thread allocated per operation, from the same counter the JMH GC profiler reads.
+ *
+ * The benchmarks are: setting a search to a position, which builds the chains and the two-distance arrays; listing the moves of a position and evaluating it,
+ * both from a fresh analysis; the H-search root moves; the Zobrist key of a board; a search of one move at each fixed depth, from an empty transposition table
+ * but with the search's analyses of earlier positions kept, as they are between the moves of a game; and GameAI choosing a move.
+ *
+ * Usage: Benchmarks [iterationMillis] [gridSize...]
+ */
+public final class Benchmarks {
+    private final static int RED = 1;
+    private final static long SEED = 20061;
+    private final static int POSITIONS = 16;
+    private final static int ITERATIONS = 5;
+    private final static int[] DEFAULT_SIZES = { 7, 11, 13, 19 };
+    private final static int[] SEARCH_DEPTHS = { 1, 2, 3 };
+    private final static int BEAM_SIZE = 5;
+    // Small, so clearing it between searches costs little
+    private final static int TABLE_MEMORY = 256 * 1024;
+
+    // Where the results of the benchmarks go, so the work can not be optimized away
+    private static volatile long sink;
+
+    private final long iterationMillis;
+
+    private Benchmarks(long iterationMillis) {
+        this.iterationMillis = iterationMillis;
+    }
+
+    /**
+     * One operation of a benchmark
+     */
+    private interface Operation {
+        /**
+         * Runs the operation on a position
+         *
+         * @param index
+         *            the index of the position
+         * @return anything the result depends on
+         */
+        long run(int index);
+    }
+
+    /**
+     * Makes the positions of a board size: random games a quarter of the way to a full board, in which neither colour has won yet
+     */
+    static Position[] positions(int gridSize) {
+        Random random = new Random(SEED + gridSize);
+        Position[] positions = new Position[POSITIONS];
+        int plies = gridSize * gridSize / 4;
+        for(int i = 0; i < positions.length;) {
+            Position position = new Position(gridSize, false);
+            for(int ply = 0; ply < plies; ply++) {
+                int x, y;
+                do {
+                    x = random.nextInt(gridSize);
+                    y = random.nextInt(gridSize);
+                } while(!position.isLegal(x, y));
+                position = position.play(x, y);
+            }
+            if(position.getWinner() == 0) positions[i++] = position;
+        }
+        return positions;
+    }
+
+    /**
+     * Runs every benchmark on one board size
+     */
+    private void run(int gridSize) {
+        Position[] positions = positions(gridSize);
+        final BitBoard[] boards = new BitBoard[positions.length];
+        final int[] colours = new int[positions.length];
+        for(int i = 0; i < positions.length; i++) {
+            boards[i] = positions[i].toBitBoard();
+            colours[i] = positions[i].getTeam();
+        }
+
+        final TranspositionTable table = new TranspositionTable(TABLE_MEMORY);
+        final BeeGameAI ai = new BeeGameAI(RED, gridSize, SEARCH_DEPTHS[SEARCH_DEPTHS.length - 1], BEAM_SIZE, TABLE_MEMORY, 1);
+        final BeeSearch search = new BeeSearch(ai, gridSize, SEARCH_DEPTHS[SEARCH_DEPTHS.length - 1], BEAM_SIZE, table);
+        final Zobrist zobrist = Zobrist.forSize(gridSize);
+        final BitBoard board = new BitBoard(gridSize);
+        final Chains chains = new Chains(board);
+        final TwoDistance distances = new TwoDistance(board, chains);
+        final PositionAnalysis analysis = new PositionAnalysis(board.cells());
+        final long[] emptyCells = new long[board.words()];
+        final long[] moves = new long[board.cells()];
+
+        measure("setPosition", gridSize, new Operation() {
+            @Override
+            public long run(int index) {
+                search.setPosition(boards[index], colours[index], 1);
+                return 0;
+            }
+        });
+
+        // The analysis is cached by key, so every operation analyses from scratch
+        measure("moves", gridSize, new Operation() {
+            @Override
+            public long run(int index) {
+                setBoard(board, chains, distances, boards[index]);
+                analysis.analyse(index, board, distances, emptyCells);
+                return analysis.moves(moves, moves.length);
+            }
+        });
+        measure("evaluate", gridSize, new Operation() {
+            @Override
+            public long run(int index) {
+                setBoard(board, chains, distances, boards[index]);
+                analysis.analyse(index, board, distances, emptyCells);
+                return analysis.value();
+            }
+        });
+
+        measure("rootMoves", gridSize, new Operation() {
+            @Override
+            public long run(int index) {
+                search.setPosition(boards[index], colours[index], 1);
+                search.rootMoves(colours[index], emptyCells);
+                return emptyCells[0];
+            }
+        });
+
+        measure("zobrist", gridSize, new Operation() {
+            @Override
+            public long run(int index) {
+                return zobrist.hash(boards[index]);
+            }
+        });
+
+        // Searches the move the ordering likes best
+        final int[] firstMoves = new int[positions.length];
+        int[] ordered = new int[board.cells()];
+        for(int i = 0; i < positions.length; i++) {
+            search.setPosition(boards[i], colours[i], 1);
+            search.orderedMoves(ordered);
+            firstMoves[i] = ordered[0];
+        }
+        for(final int depth : SEARCH_DEPTHS) {
+            measure("search depth " + depth, gridSize, new Operation() {
+                @Override
+                public long run(int index) {
+                    table.clear();
+                    search.setPosition(boards[index], colours[index], depth);
+                    return search.searchMove(firstMoves[index], colours[index], -BeeSearch.INFINITY);
+                }
+            });
+        }
+
+        final Position[] gameAIPositions = positions;
+        measure("GameAI move", gridSize, new Operation() {
+            @Override
+            public long run(int index) {
+                GameAI player = new GameAI(gameAIPositions[index].getTeam());
+                player.setOpeningBook(null);
+                return player.chooseMove(gameAIPositions[index], Budget.DEFAULT).move.x;
+            }
+        });
+    }
+
+    /**
+     * Sets a board to a position, with its chains and two-distance arrays
+     */
+    private static void setBoard(BitBoard board, Chains chains, TwoDistance distances, BitBoard position) {
+        board.copyFrom(position);
+        chains.rebuild();
+        distances.rebuild();
+    }
+
+    /**
+     * Warms a benchmark up, times it and prints its results
+     */
+    private void measure(String name, int gridSize, Operation operation) {
+        iteration(operation);
+        double[] rates = new double[ITERATIONS];
+        long totalOperations = 0;
+        long allocated = Allocations.currentThread();
+        for(int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            long operations = iteration(operation);
+            rates[i] = operations * 1e9 / (System.nanoTime() - start);
+            totalOperations += operations;
+        }
+        allocated = allocated < 0 ? -1 : Allocations.currentThread() - allocated;
+
+        double mean = 0;
+        for(double rate : rates) {
+            mean += rate / ITERATIONS;
+        }
+        double variance = 0;
+        for(double rate : rates) {
+            variance += (rate - mean) * (rate - mean) / (ITERATIONS - 1);
+        }
+        String bytes = allocated < 0 ? "n/a" : String.format("%.1f", (double) allocated / totalOperations);
+        System.out.println(String.format("%-16s %3dx%-3d %14.1f +- %10.1f ops/s %12s B/op", name, gridSize, gridSize, mean, Math.sqrt(variance), bytes));
+    }
+
+    /**
+     * Runs a benchmark over the positions for one iteration's time
+     *
+     * @return the number of operations run
+     */
+    private long iteration(Operation operation) {
+        long end = System.nanoTime() + iterationMillis * 1000000;
+        long operations = 0;
+        long result = 0;
+        do {
+            for(int i = 0; i < POSITIONS; i++) {
+                result += operation.run(i);
+            }
+            operations += POSITIONS;
+        } while(System.nanoTime() - end < 0);
+        sink += result;
+        return operations;
+    }
+
+    public static void main(String[] args) {
+        long iterationMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        int[] sizes = DEFAULT_SIZES;
+        if(args.length > 1) {
+            sizes = new int[args.length - 1];
+            for(int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        Benchmarks benchmarks = new Benchmarks(iterationMillis);
+        for(int gridSize : sizes) {
+            benchmarks.run(gridSize);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,327 @@
+package com.hex.ai;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A Hex board for Bee, stored as one bitset per colour.
+ *
+ * The board is padded the same way Bee always pads it: a border of RED pieces down the first and last column and a border of BLUE pieces along the first and last
+ * row, with the four corners left empty. A cell is numbered row * width + column and is bit (cell % 64) of word (cell / 64).
+ *
+ * Every cell has a precomputed bitset of its neighbours, so empty neighbours are found and winning connections are grown a whole neighbourhood at a time.
+ */
+final class BitBoard {
+    static final int RED = 1, BLUE = 2;
+
+    private final int width;
+    private final int cells;
+    private final int words;
+    private final long[] red;
+    private final long[] blue;
+
+    // Geometry, the same for every board of this size
+    private final Geometry geometry;
+    // Scratch space for growing chains
+    private final long[] frontier;
+    private final long[] connection;
+
+    /**
+     * Creates an empty board
+     *
+     * @param gridSize
+     *            the size of the board, without the border
+     */
+    BitBoard(int gridSize) {
+        width = gridSize + 2;
+        cells = width * width;
+        words = (cells + 63) >>> 6;
+        red = new long[words];
+        blue = new long[words];
+        geometry = Geometry.forWidth(width);
+        frontier = new long[words];
+        connection = new long[words];
+        clear();
+    }
+
+    /**
+     * Removes every piece except the border
+     */
+    void clear() {
+        Arrays.fill(red, 0);
+        Arrays.fill(blue, 0);
+        for(int i = 1; i < width - 1; i++) {
+            set(i, 0, RED);
+            set(0, i, BLUE);
+            set(i, width - 1, RED);
+            set(width - 1, i, BLUE);
+        }
+    }
+
+    /**
+     * Replaces the pieces of this board with the pieces of another board of the same size
+     */
+    void copyFrom(BitBoard other) {
+        System.arraycopy(other.red, 0, red, 0, words);
+        System.arraycopy(other.blue, 0, blue, 0, words);
+    }
+
+    int width() {
+        return width;
+    }
+
+    int cells() {
+        return cells;
+    }
+
+    int words() {
+        return words;
+    }
+
+    int cell(int row, int column) {
+        return row * width + column;
+    }
+
+    /**
+     * Returns the colour of the piece on a cell, or 0 if it is empty
+     */
+    int get(int cell) {
+        if((red[cell >>> 6] & 1L << cell) != 0) return RED;
+        if((blue[cell >>> 6] & 1L << cell) != 0) return BLUE;
+        return 0;
+    }
+
+    int get(int row, int column) {
+        return get(row * width + column);
+    }
+
+    boolean isEmpty(int cell) {
+        return ((red[cell >>> 6] | blue[cell >>> 6]) & 1L << cell) == 0;
+    }
+
+    /**
+     * Puts a piece on a cell, replacing whatever was there
+     *
+     * @param colour
+     *            RED, BLUE or 0 to empty the cell
+     */
+    void set(int cell, int colour) {
+        long bit = 1L << cell;
+        red[cell >>> 6] &= ~bit;
+        blue[cell >>> 6] &= ~bit;
+        if(colour == RED) red[cell >>> 6] |= bit;
+        else if(colour == BLUE) blue[cell >>> 6] |= bit;
+    }
+
+    void set(int row, int column, int colour) {
+        set(row * width + column, colour);
+    }
+
+    /**
+     * Returns the bitset of a colour. The array belongs to the board and must not be changed.
+     */
+    long[] pieces(int colour) {
+        return colour == RED ? red : blue;
+    }
+
+    /**
+     * Returns the six cells next to every cell, six entries per cell, with -1 past the edge of the board
+     */
+    int[] adjacency() {
+        return geometry.adjacent;
+    }
+
+    /**
+     * Checks if a cell is next to a piece of the given colour
+     */
+    boolean touches(int cell, int colour) {
+        long[] pieces = pieces(colour);
+        long[] mask = geometry.neighbourMasks;
+        int base = cell * words;
+        for(int w = geometry.firstWord[cell]; w <= geometry.lastWord[cell]; w++) {
+            if((mask[base + w] & pieces[w]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copies the bitset of the cells next to a cell into out, starting at the given index
+     */
+    void neighbourMask(int cell, long[] out, int offset) {
+        System.arraycopy(geometry.neighbourMasks, cell * words, out, offset, words);
+    }
+
+    /**
+     * Lists the empty cells next to a cell
+     *
+     * @param out
+     *            the array to fill
+     * @return the number of empty cells
+     */
+    int emptyNeighbours(int cell, int[] out) {
+        long[] mask = geometry.neighbourMasks;
+        int base = cell * words;
+        int count = 0;
+        for(int w = geometry.firstWord[cell]; w <= geometry.lastWord[cell]; w++) {
+            long empty = mask[base + w] & ~(red[w] | blue[w]);
+            while(empty != 0) {
+                out[count++] = w * 64 + Long.numberOfTrailingZeros(empty);
+                empty &= empty - 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes the cells that hold a piece from a bitset
+     */
+    void keepEmpty(long[] set) {
+        for(int w = 0; w < words; w++) {
+            set[w] &= ~(red[w] | blue[w]);
+        }
+    }
+
+    /**
+     * Writes the empty cells inside the border to out
+     */
+    void emptyInterior(long[] out) {
+        long[] interior = geometry.interior;
+        for(int w = 0; w < words; w++) {
+            out[w] = interior[w] & ~(red[w] | blue[w]);
+        }
+    }
+
+    /**
+     * Checks if a colour has connected its two sides of the board
+     *
+     * @param colour
+     *            RED or BLUE
+     */
+    boolean isConnected(int colour) {
+        long[] chain = connection;
+        long[] goal = colour == RED ? geometry.lastColumn : geometry.lastRow;
+        System.arraycopy(colour == RED ? geometry.firstColumn : geometry.firstRow, 0, chain, 0, words);
+        fill(chain, pieces(colour));
+        for(int w = 0; w < words; w++) {
+            if((chain[w] & goal[w]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Grows a set of cells through the given pieces until it stops changing. Every cell added is visited once and adds the pieces under its neighbour mask.
+     */
+    private void fill(long[] set, long[] through) {
+        long[] mask = geometry.neighbourMasks;
+        long[] frontier = this.frontier;
+        System.arraycopy(set, 0, frontier, 0, words);
+        int w = 0;
+        while(w < words) {
+            if(frontier[w] == 0) {
+                w++;
+                continue;
+            }
+            int cell = w * 64 + Long.numberOfTrailingZeros(frontier[w]);
+            frontier[w] &= frontier[w] - 1;
+            int base = cell * words;
+            for(int v = geometry.firstWord[cell]; v <= geometry.lastWord[cell]; v++) {
+                long added = mask[base + v] & through[v] & ~set[v];
+                set[v] |= added;
+                frontier[v] |= added;
+                // Pieces added to an earlier word are visited before moving on
+                if(added != 0 && v < w) w = v;
+            }
+        }
+    }
+
+    /**
+     * Returns the next cell in a bitset, starting from the given cell, or -1 if there is none
+     */
+    static int next(long[] set, int from) {
+        int w = from >>> 6;
+        if(w >= set.length) return -1;
+        long word = set[w] & -1L << from;
+        while(word == 0) {
+            if(++w == set.length) return -1;
+            word = set[w];
+        }
+        return w * 64 + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Masks and tables that only depend on the size of the board
+     */
+    private static final class Geometry {
+        private static final HashMap<Integer, Geometry> cache = new HashMap<Integer, Geometry>();
+
+        final long[] interior;
+        final long[] firstColumn;
+        final long[] lastColumn;
+        final long[] firstRow;
+        final long[] lastRow;
+        final int[] adjacent;
+        final long[] neighbourMasks;
+        final int[] firstWord;
+        final int[] lastWord;
+
+        private Geometry(int width) {
+            int cells = width * width;
+            int words = (cells + 63) >>> 6;
+            interior = new long[words];
+            firstColumn = new long[words];
+            lastColumn = new long[words];
+            firstRow = new long[words];
+            lastRow = new long[words];
+            for(int i = 0; i < width; i++) {
+                for(int j = 0; j < width; j++) {
+                    int cell = i * width + j;
+                    if(i > 0 && j > 0 && i < width - 1 && j < width - 1) set(interior, cell);
+                    if(j == 0) set(firstColumn, cell);
+                    if(j == width - 1) set(lastColumn, cell);
+                    if(i == 0) set(firstRow, cell);
+                    if(i == width - 1) set(lastRow, cell);
+                }
+            }
+
+            adjacent = new int[cells * 6];
+            neighbourMasks = new long[cells * words];
+            firstWord = new int[cells];
+            lastWord = new int[cells];
+            for(int i = 0; i < width; i++) {
+                for(int j = 0; j < width; j++) {
+                    int cell = i * width + j;
+                    int k = cell * 6;
+                    firstWord[cell] = words;
+                    lastWord[cell] = -1;
+                    for(int a = -1; a <= 1; a++) {
+                        for(int b = -1; b <= 1; b++) {
+                            if(a + b == 0) continue;
+                            if(i + a < 0 || i + a == width || j + b < 0 || j + b == width) {
+                                adjacent[k++] = -1;
+                                continue;
+                            }
+                            int neighbour = (i + a) * width + j + b;
+                            adjacent[k++] = neighbour;
+                            neighbourMasks[cell * words + (neighbour >>> 6)] |= 1L << neighbour;
+                            firstWord[cell] = Math.min(firstWord[cell], neighbour >>> 6);
+                            lastWord[cell] = Math.max(lastWord[cell], neighbour >>> 6);
+                        }
+                    }
+                }
+            }
+        }
+
+        private static void set(long[] set, int cell) {
+            set[cell >>> 6] |= 1L << cell;
+        }
+
+        static synchronized Geometry forWidth(int width) {
+            Geometry geometry = cache.get(width);
+            if(geometry == null) {
+                geometry = new Geometry(width);
+                cache.put(width, geometry);
+            }
+            return geometry;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.hex.ai;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The bridges GameAI is holding, as pairs of cells: if the opponent plays in one cell of a bridge, GameAI answers in the other.
+ *
+ * The bridges are packed two cells each in one int array, in the order they were made, which is the order GameAI defends and fills them in. A cell is a number
+ * the caller chooses, such as x * gridSize + y. Removing a bridge moves the later bridges down one place, so putting it back at the same index, as an undo does,
+ * restores the table exactly.
+ *
+ * The caller tells the table which cells are taken, and only when that changes. Every cell points at the bridges it belongs to, so taking a cell marks its
+ * bridges broken with a look-up, and the broken bridges are found without looking at the others. A cell may belong to several bridges.
+ */
+final class BridgeTable implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int[] cells;
+    private int count;
+    // The bridges of each cell, as a list through the entries of cells[]: the
+    // first entry of each cell, or -1, and after each entry the next, or -1
+    private int[] heads;
+    private int[] next;
+    // The cells that are taken, and the bridges with a cell taken
+    private boolean[] taken;
+    private final BitSet broken = new BitSet();
+
+    BridgeTable() {
+        cells = new int[16];
+        next = new int[16];
+        heads = new int[0];
+        taken = new boolean[0];
+    }
+
+    /**
+     * Adds a bridge after the others
+     *
+     * @return the index of the bridge
+     */
+    int add(int first, int second) {
+        insert(count, first, second);
+        return count - 1;
+    }
+
+    /**
+     * Adds a bridge at an index, moving the bridges from there on up one place
+     */
+    void insert(int bridge, int first, int second) {
+        if(count * 2 == cells.length) {
+            cells = Arrays.copyOf(cells, cells.length * 2);
+            next = Arrays.copyOf(next, next.length * 2);
+        }
+        if(bridge < count) unlinkAll();
+        System.arraycopy(cells, bridge * 2, cells, bridge * 2 + 2, (count - bridge) * 2);
+        cells[bridge * 2] = first;
+        cells[bridge * 2 + 1] = second;
+        count++;
+        if(bridge < count - 1) linkAll();
+        else link(bridge);
+    }
+
+    /**
+     * Removes a bridge, moving the bridges after it down one place. The lists of the cells are built again, which takes as long as the move.
+     */
+    void remove(int bridge) {
+        unlinkAll();
+        count--;
+        System.arraycopy(cells, bridge * 2 + 2, cells, bridge * 2, (count - bridge) * 2);
+        linkAll();
+    }
+
+    int first(int bridge) {
+        return cells[bridge * 2];
+    }
+
+    int second(int bridge) {
+        return cells[bridge * 2 + 1];
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Removes every bridge and forgets which cells are taken
+     */
+    void clear() {
+        unlinkAll();
+        count = 0;
+        Arrays.fill(taken, false);
+    }
+
+    /**
+     * Tells the table a cell has been taken or emptied
+     */
+    void setTaken(int cell, boolean isTaken) {
+        grow(cell);
+        taken[cell] = isTaken;
+        for(int entry = heads[cell]; entry >= 0; entry = next[entry]) {
+            int bridge = entry >> 1;
+            broken.set(bridge, taken[cells[bridge * 2]] || taken[cells[bridge * 2 + 1]]);
+        }
+    }
+
+    /**
+     * Returns the first bridge from an index on that has a cell taken, or -1 if there is none
+     */
+    int nextBroken(int bridge) {
+        return broken.nextSetBit(bridge);
+    }
+
+    /**
+     * Puts a bridge in the lists of its cells
+     */
+    private void link(int bridge) {
+        for(int entry = bridge * 2; entry < bridge * 2 + 2; entry++) {
+            int cell = cells[entry];
+            grow(cell);
+            next[entry] = heads[cell];
+            heads[cell] = entry;
+        }
+        broken.set(bridge, taken[cells[bridge * 2]] || taken[cells[bridge * 2 + 1]]);
+    }
+
+    private void linkAll() {
+        for(int bridge = 0; bridge < count; bridge++) {
+            link(bridge);
+        }
+    }
+
+    /**
+     * Empties the lists of the cells, before the bridges move
+     */
+    private void unlinkAll() {
+        for(int entry = 0; entry < count * 2; entry++) {
+            heads[cells[entry]] = -1;
+        }
+        broken.clear();
+    }
+
+    private void grow(int cell) {
+        if(cell < heads.length) return;
+        int length = heads.length;
+        heads = Arrays.copyOf(heads, Math.max(cell + 1, length * 2));
+        Arrays.fill(heads, length, heads.length, -1);
+        taken = Arrays.copyOf(taken, heads.length);
+    }
+}
@@ -0,0 +1,59 @@
+package com.hex.ai;
+
+/**
+ * How long an Engine may think about a move: a number of nodes, a time, both, or as long as its own settings say.
+ *
+ * An engine always finishes its first, shallowest search, so it has a move to make however small the budget. The node count is that of the engine's own
+ * search and only compares between moves of the same engine.
+ */
+public final class Budget {
+    // The budget of an engine's own settings, such as Bee's depth
+    public static final Budget DEFAULT = new Budget(0, 0);
+
+    private final long nodes;
+    private final long millis;
+
+    private Budget(long nodes, long millis) {
+        this.nodes = nodes;
+        this.millis = millis;
+    }
+
+    /**
+     * Returns a budget of a number of nodes
+     */
+    public static Budget nodes(long nodes) {
+        return new Budget(nodes, 0);
+    }
+
+    /**
+     * Returns a budget of a time in milliseconds
+     */
+    public static Budget millis(long millis) {
+        return new Budget(0, millis);
+    }
+
+    /**
+     * Returns a budget of whichever runs out first, a number of nodes or a time in milliseconds
+     */
+    public static Budget of(long nodes, long millis) {
+        return new Budget(nodes, millis);
+    }
+
+    /**
+     * Returns the number of nodes, or 0 if they are not limited
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the time in milliseconds, or 0 if it is not limited
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    public boolean isDefault() {
+        return nodes == 0 && millis == 0;
+    }
+}
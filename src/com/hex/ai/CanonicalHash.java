@@ -0,0 +1,129 @@
+package com.hex.ai;
+
+/**
+ * The Zobrist keys of a board in each of its symmetric orientations, kept up to date as pieces are placed and removed, so that equivalent positions share one
+ * key in the opening book and in the evaluations of the transposition table.
+ *
+ * A position is worth the same to the player to move after a half turn of the board, and after a reflection in either diagonal if the colours, and so the
+ * player to move, are swapped as well: the reflection turns Red's sides into Blue's. The canonical key of a position is the smallest of its four keys, and
+ * the transform that gave it maps moves into the canonical orientation and back. Every transform is its own inverse, so the same map works both ways.
+ *
+ * With the swap rule, a position with one piece on the board is not the same as its reflection, since only the second player may swap; those positions must
+ * only be turned, with ROTATIONS.
+ */
+final class CanonicalHash {
+    static final int IDENTITY = 0, ROTATION = 1, TRANSPOSE = 2, ANTI_TRANSPOSE = 3;
+    // The number of transforms that keep the colours, and of all of them
+    static final int ROTATIONS = 2, ALL = 4;
+    private final static int RED = 1;
+
+    private final Zobrist zobrist;
+    private final int width;
+    // The key of the board and the player to move in each orientation
+    private final long[] hashes = new long[ALL];
+
+    CanonicalHash(int gridSize) {
+        zobrist = Zobrist.forSize(gridSize);
+        width = gridSize + 2;
+    }
+
+    /**
+     * Hashes a board and the player to move from scratch
+     */
+    void set(BitBoard board, int colour) {
+        for(int transform = 0; transform < ALL; transform++) {
+            hashes[transform] = 0;
+        }
+        for(int cell = 0; cell < board.cells(); cell++) {
+            int row = cell / width;
+            int column = cell % width;
+            int piece = board.get(cell);
+            if(piece == 0 || row == 0 || row == width - 1 || column == 0 || column == width - 1) continue;
+            for(int transform = 0; transform < ALL; transform++) {
+                hashes[transform] ^= zobrist.transformedKey(cell, piece, transform);
+            }
+        }
+        for(int transform = 0; transform < ALL; transform++) {
+            if(colour(colour, transform) != RED) hashes[transform] ^= zobrist.side();
+        }
+    }
+
+    /**
+     * Places a piece, or removes it, and passes the move to the other player
+     */
+    void toggle(int cell, int colour) {
+        for(int transform = 0; transform < ALL; transform++) {
+            hashes[transform] ^= zobrist.transformedKey(cell, colour, transform) ^ zobrist.side();
+        }
+    }
+
+    /**
+     * Returns the canonical key, the smallest of the keys of every orientation
+     */
+    long key() {
+        return hashes[transform(ALL)];
+    }
+
+    /**
+     * Returns the canonical key of the position after a move, without making it
+     */
+    long childKey(int cell, int colour) {
+        long best = Long.MAX_VALUE;
+        for(int transform = 0; transform < ALL; transform++) {
+            best = Math.min(best, hashes[transform] ^ zobrist.transformedKey(cell, colour, transform) ^ zobrist.side());
+        }
+        return best;
+    }
+
+    /**
+     * Returns the key of the board after a transform
+     */
+    long key(int transform) {
+        return hashes[transform];
+    }
+
+    /**
+     * Returns the transform to the canonical orientation
+     *
+     * @param transforms
+     *            ROTATIONS or ALL, the transforms the board may be put through
+     */
+    int transform(int transforms) {
+        int best = IDENTITY;
+        for(int transform = 1; transform < transforms; transform++) {
+            if(hashes[transform] < hashes[best]) best = transform;
+        }
+        return best;
+    }
+
+    /**
+     * Maps a cell through a transform, which also maps it back. TranspositionTable.NO_MOVE is left as it is.
+     */
+    int cell(int cell, int transform) {
+        if(cell == TranspositionTable.NO_MOVE) return cell;
+        return cell(cell, transform, width);
+    }
+
+    /**
+     * Maps a cell of a padded board of the given width through a transform
+     */
+    static int cell(int cell, int transform, int width) {
+        switch(transform) {
+        case ROTATION:
+            return width * width - 1 - cell;
+        case TRANSPOSE:
+            return cell % width * width + cell / width;
+        case ANTI_TRANSPOSE:
+            return width * width - 1 - (cell % width * width + cell / width);
+        default:
+            return cell;
+        }
+    }
+
+    /**
+     * Maps a colour through a transform: the reflections swap the colours
+     */
+    static int colour(int colour, int transform) {
+        return transform >= TRANSPOSE ? 3 - colour : colour;
+    }
+}
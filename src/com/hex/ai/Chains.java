@@ -0,0 +1,161 @@
+package com.hex.ai;
+
+import java.util.Arrays;
+
+/**
+ * The chains of a Bee board, kept in a union-find that can be rolled back.
+ *
+ * Every chain also keeps the bitset of cells next to any of its pieces, so the empty cells a chain connects are a few word operations away. Sets are joined by
+ * size without path compression, which keeps every union undoable: undo() just points the smaller root back at itself and restores the neighbourhood of the
+ * larger one.
+ *
+ * The border pieces along each side of the board are one chain, so they double as the side's edge node: a colour has won as soon as the chains of its two
+ * borders are the same chain.
+ */
+final class Chains {
+    private final BitBoard board;
+    private final int words;
+    private final int[] adjacent;
+    private final int[] parent;
+    private final int[] size;
+    // The cells next to each chain, stored for the root of the chain
+    private final long[] neighbourhood;
+
+    // The unions made by each place(), as the root that was joined
+    // and the neighbourhood of the root it was joined to
+    private final int[] joined;
+    private long[] savedWords;
+    private int joinCount;
+    private final int[] marks;
+    private int markCount;
+
+    /**
+     * Constructor for the Chains class
+     *
+     * @param board
+     *            the board to keep the chains of. Pieces must be put on it before place() and taken off after undo().
+     */
+    Chains(BitBoard board) {
+        this.board = board;
+        this.words = board.words();
+        int cells = board.cells();
+        adjacent = board.adjacency();
+        parent = new int[cells];
+        size = new int[cells];
+        neighbourhood = new long[cells * words];
+        joined = new int[cells * 3];
+        savedWords = new long[64 * words];
+        marks = new int[cells + 1];
+    }
+
+    /**
+     * Finds the chains of the board from scratch
+     */
+    void rebuild() {
+        joinCount = 0;
+        markCount = 0;
+        for(int cell = 0; cell < parent.length; cell++) {
+            if(!board.isEmpty(cell)) add(cell);
+        }
+        for(int cell = 0; cell < parent.length; cell++) {
+            int colour = board.get(cell);
+            if(colour == 0) continue;
+            for(int k = cell * 6; k < cell * 6 + 6; k++) {
+                int neighbour = adjacent[k];
+                if(neighbour >= 0 && board.get(neighbour) == colour) union(cell, neighbour, false);
+            }
+        }
+    }
+
+    /**
+     * Adds a piece that has been placed on the board, joining it to the chains next to it
+     */
+    void place(int cell) {
+        marks[markCount++] = joinCount;
+        add(cell);
+        int colour = board.get(cell);
+        for(int k = cell * 6; k < cell * 6 + 6; k++) {
+            int neighbour = adjacent[k];
+            if(neighbour >= 0 && board.get(neighbour) == colour) union(cell, neighbour, true);
+        }
+    }
+
+    /**
+     * Rolls the chains back to before the last place()
+     */
+    void undo() {
+        int mark = marks[--markCount];
+        while(joinCount > mark) {
+            joinCount--;
+            int child = joined[joinCount];
+            int root = parent[child];
+            parent[child] = child;
+            size[root] -= size[child];
+            System.arraycopy(savedWords, joinCount * words, neighbourhood, root * words, words);
+        }
+    }
+
+    /**
+     * Returns the root of the chain a piece belongs to
+     */
+    int find(int cell) {
+        while(parent[cell] != cell) {
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    /**
+     * Checks if a colour has connected its two sides of the board
+     *
+     * @param colour
+     *            BitBoard.RED or BitBoard.BLUE
+     */
+    boolean isConnected(int colour) {
+        int last = board.width() - 1;
+        if(colour == BitBoard.RED) return find(board.cell(1, 0)) == find(board.cell(1, last));
+        return find(board.cell(0, 1)) == find(board.cell(last, 1));
+    }
+
+    /**
+     * Ors the cells next to a chain into a bitset
+     *
+     * @param root
+     *            the root of the chain
+     */
+    void addNeighbourhood(int root, long[] out) {
+        int base = root * words;
+        for(int w = 0; w < words; w++) {
+            out[w] |= neighbourhood[base + w];
+        }
+    }
+
+    private void add(int cell) {
+        parent[cell] = cell;
+        size[cell] = 1;
+        board.neighbourMask(cell, neighbourhood, cell * words);
+    }
+
+    private void union(int first, int second, boolean record) {
+        int a = find(first);
+        int b = find(second);
+        if(a == b) return;
+        if(size[a] < size[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        if(record) {
+            if((joinCount + 1) * words > savedWords.length) savedWords = Arrays.copyOf(savedWords, savedWords.length * 2);
+            System.arraycopy(neighbourhood, a * words, savedWords, joinCount * words, words);
+            joined[joinCount++] = b;
+        }
+        parent[b] = a;
+        size[a] += size[b];
+        int aBase = a * words;
+        int bBase = b * words;
+        for(int w = 0; w < words; w++) {
+            neighbourhood[aBase + w] |= neighbourhood[bBase + w];
+        }
+    }
+}
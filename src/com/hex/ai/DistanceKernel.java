@@ -0,0 +1,56 @@
+package com.hex.ai;
+
+/**
+ * The inner loop of TwoDistance's level by level rebuild, for the cells that touch no chain of the array's colour. Their neighbours are the six cells around
+ * them, so a whole row of them can be done at once.
+ *
+ * The kernel is VectorDistanceKernel, which uses jdk.incubator.vector. That module only exists on Java 16 and later, and not at all on Android, so the kernel is
+ * kept in src-vector and compiled on its own, against the classes of src:
+ *
+ * javac --release 17 --add-modules jdk.incubator.vector -cp [classes of src] -d [classes] src-vector/com/hex/ai/*.java
+ *
+ * and it is only used if the hex.vector system property is true and the class loads, which needs --add-modules jdk.incubator.vector on the command line too.
+ * Otherwise TwoDistance builds its arrays breadth first, which is faster on the boards Bee plays, so the kernel is there to be measured rather than to be the
+ * default.
+ */
+abstract class DistanceKernel {
+    private static final String CLASS_NAME = "com.hex.ai.VectorDistanceKernel";
+
+    // The kinds of cell: not interior or not empty, interior and empty and touching no chain of the array's colour, and interior and empty and next to one
+    static final int OTHER = 0, PLAIN = 1, NEXT_TO_CHAIN = 2;
+
+    /**
+     * Gives the plain cells of a level their distance: every PLAIN cell that has no distance yet, and has at least two of the six cells around it at the level
+     * or less, gets level + 1. The cells are updated in place, which is safe because a new value is never at the level or less.
+     *
+     * @param distance
+     *            the two-distance array, with INFINITY for the cells not reached yet
+     * @param kinds
+     *            the kind of every cell
+     * @param width
+     *            the width of the padded board
+     * @param level
+     *            the distance of the cells reached last
+     * @param reached
+     *            the array to list the cells given a distance in
+     * @return the number of cells given a distance
+     */
+    abstract int step(int[] distance, int[] kinds, int width, int level, int[] reached);
+
+    /**
+     * Returns the kernel, or null if it is not wanted or can not be used here
+     */
+    static DistanceKernel load() {
+        if(!Boolean.getBoolean("hex.vector")) return null;
+        try {
+            return (DistanceKernel) Class.forName(CLASS_NAME).getDeclaredConstructor().newInstance();
+        }
+        catch(Exception e) {
+            return null;
+        }
+        catch(LinkageError e) {
+            // The class is there but the vector module is not
+            return null;
+        }
+    }
+}
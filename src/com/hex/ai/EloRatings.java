@@ -0,0 +1,92 @@
+package com.hex.ai;
+
+import java.util.Arrays;
+
+/**
+ * Elo ratings fitted to the results of a tournament.
+ *
+ * The ratings are the maximum likelihood fit of the Bradley-Terry model, in which a player rated d Elo higher than another wins a game against it with
+ * probability 1 / (1 + 10^(-d / 400)). Every pair of players that met is given one extra drawn game, so a player that won all its games still gets a finite
+ * rating. The ratings average 0, and their intervals are 95% intervals from the curvature of the likelihood, which holds once each player has played a few
+ * dozen games.
+ */
+final class EloRatings {
+    private static final double ELO_PER_NATURAL_UNIT = 400 / Math.log(10);
+    private static final int ITERATIONS = 1000;
+
+    private final double[] ratings;
+    private final double[] intervals;
+
+    /**
+     * Fits the ratings to the results
+     *
+     * @param wins
+     *            the number of games each player won against each other player, indexed [winner][loser]
+     */
+    EloRatings(int[][] wins) {
+        int players = wins.length;
+        double[][] won = new double[players][players];
+        for(int i = 0; i < players; i++) {
+            for(int j = 0; j < players; j++) {
+                if(i != j && wins[i][j] + wins[j][i] > 0) won[i][j] = wins[i][j] + 0.5;
+            }
+        }
+
+        // Fits the strengths with the minorization-maximization
+        // algorithm, which converges from any starting point
+        double[] strengths = new double[players];
+        Arrays.fill(strengths, 1);
+        for(int iteration = 0; iteration < ITERATIONS; iteration++) {
+            double change = 0;
+            for(int i = 0; i < players; i++) {
+                double totalWins = 0;
+                double denominator = 0;
+                for(int j = 0; j < players; j++) {
+                    double games = won[i][j] + won[j][i];
+                    if(games == 0) continue;
+                    totalWins += won[i][j];
+                    denominator += games / (strengths[i] + strengths[j]);
+                }
+                if(denominator == 0) continue;
+                double strength = totalWins / denominator;
+                change = Math.max(change, Math.abs(Math.log(strength / strengths[i])));
+                strengths[i] = strength;
+            }
+            if(change < 1e-9) break;
+        }
+
+        ratings = new double[players];
+        double mean = 0;
+        for(int i = 0; i < players; i++) {
+            ratings[i] = Math.log(strengths[i]) * ELO_PER_NATURAL_UNIT;
+            mean += ratings[i] / players;
+        }
+        intervals = new double[players];
+        for(int i = 0; i < players; i++) {
+            ratings[i] -= mean;
+
+            // The Fisher information of the rating, given the others
+            double information = 0;
+            for(int j = 0; j < players; j++) {
+                double games = won[i][j] + won[j][i];
+                double p = strengths[i] / (strengths[i] + strengths[j]);
+                information += games * p * (1 - p);
+            }
+            intervals[i] = information == 0 ? Double.POSITIVE_INFINITY : 1.96 * ELO_PER_NATURAL_UNIT / Math.sqrt(information);
+        }
+    }
+
+    /**
+     * Returns the rating of a player
+     */
+    double rating(int player) {
+        return ratings[player];
+    }
+
+    /**
+     * Returns the half-width of the 95% interval of a player's rating
+     */
+    double interval(int player) {
+        return intervals[player];
+    }
+}
@@ -0,0 +1,20 @@
+package com.hex.ai;
+
+/**
+ * A Hex engine that can be asked for moves directly, without a Game, its thread or its timer.
+ *
+ * The AIs that implement it are also players, and their getPlayerTurn() is a thin adapter: it builds the Position of the game, asks chooseMove() for the move
+ * and plays it. An engine answers one call at a time; use one engine per thread.
+ */
+public interface Engine {
+    /**
+     * Chooses a move for the player to move
+     *
+     * @param position
+     *            the position
+     * @param budget
+     *            how long the engine may think
+     * @return the move and its score, or null if there is no move to make
+     */
+    public ScoredMove chooseMove(Position position, Budget budget);
+}
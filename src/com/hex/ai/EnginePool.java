@@ -0,0 +1,291 @@
+package com.hex.ai;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.hex.core.AI;
+
+/**
+ * Chooses Bee's moves for many games at once on a fixed set of worker threads, instead of one Bee and one search thread for every game.
+ *
+ * Each worker keeps a single-threaded Bee for every board size and difficulty it has been asked for, so the search arrays are allocated once per worker and
+ * never per move. The Bees of a board size share one transposition table, which takes the memory of one table whatever the number of games, and lets a
+ * position searched for one game help the others. The opening book is shared by every Bee already.
+ *
+ * A Bee on its own starts a new generation of its table at every move, so the entries of earlier moves are replaced first. Here that would age the entries of
+ * the searches still running on the other workers, so the pool starts a new generation of a table once every few moves per worker instead.
+ *
+ * Requests are queued per game, and the workers take them from the games in turn, so a game that asks for many moves, such as an analysis, can not starve the
+ * others. When the queue is full, submit() waits for room, which slows down whoever is asking too fast instead of letting the queue grow.
+ */
+public final class EnginePool {
+    // The moves of a board size per worker between the generations of its table
+    private final static int MOVES_PER_GENERATION = 4;
+
+    private final int tableMemory;
+    private final int maxQueued;
+    private final Thread[] workers;
+
+    // The transposition table of each board size
+    private final HashMap<Integer, TranspositionTable> tables = new HashMap<Integer, TranspositionTable>();
+    // The moves started on each board size
+    private final HashMap<Integer, Integer> moves = new HashMap<Integer, Integer>();
+    // The queued requests of each game, and the games with requests in the order they get a turn
+    private final HashMap<Object, ArrayDeque<Request>> queues = new HashMap<Object, ArrayDeque<Request>>();
+    private final ArrayDeque<Object> turns = new ArrayDeque<Object>();
+    private int queued;
+    private boolean shutdown;
+
+    /**
+     * Constructor for the EnginePool class
+     *
+     * @param workers
+     *            the number of moves to search at once, usually the number of cores
+     * @param tableMemory
+     *            the most memory, in bytes, the transposition table of each board size may use
+     * @param maxQueued
+     *            the most requests that may wait for a worker before submit() waits too
+     */
+    public EnginePool(int workers, int tableMemory, int maxQueued) {
+        this.tableMemory = tableMemory;
+        this.maxQueued = Math.max(1, maxQueued);
+        this.workers = new Thread[Math.max(1, workers)];
+        for(int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Thread(new Worker(), "Bee pool " + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Creates a player whose moves are chosen by the pool. It can be used like the player AiTypes.newAI() creates for Bee.
+     *
+     * @param team
+     *            the team of the player
+     * @param gridSize
+     *            the size of the board
+     * @param difficulty
+     *            the difficulty, as for AiTypes.newAI()
+     */
+    public AI newAI(int team, int gridSize, int difficulty) {
+        return new PooledAI(this, team, gridSize, difficulty);
+    }
+
+    /**
+     * Asks for a move, to be chosen as soon as a worker is free and it is the game's turn
+     *
+     * @param game
+     *            the game the move is for. The workers take turns between games, and a game's own requests are answered in order.
+     * @param position
+     *            the position
+     * @param difficulty
+     *            the difficulty, as for AiTypes.newAI()
+     * @param budget
+     *            how long Bee may think
+     * @return the move, or null if there is no move to make. Cancelling it stops its search.
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting for room in the queue
+     * @throws RejectedExecutionException
+     *             if the pool has been shut down
+     */
+    public Future<ScoredMove> submit(Object game, Position position, int difficulty, Budget budget) throws InterruptedException {
+        return submit(game, position, difficulty, budget, null);
+    }
+
+    /**
+     * Asks for a move, and tells a callback once it is chosen
+     *
+     * @param callback
+     *            told the move or the failure on the worker thread, or null
+     */
+    public synchronized Future<ScoredMove> submit(Object game, Position position, int difficulty, Budget budget, Callback callback) throws InterruptedException {
+        while(queued >= maxQueued && !shutdown) {
+            wait();
+        }
+        if(shutdown) throw new RejectedExecutionException("The pool has been shut down");
+
+        Request request = new Request(new Search(position, difficulty, budget), callback);
+        ArrayDeque<Request> queue = queues.get(game);
+        if(queue == null) {
+            queue = new ArrayDeque<Request>();
+            queues.put(game, queue);
+            turns.add(game);
+        }
+        queue.add(request);
+        queued++;
+        notifyAll();
+        return request;
+    }
+
+    /**
+     * Stops the workers once their searches finish. Queued requests are cancelled.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        for(ArrayDeque<Request> queue : queues.values()) {
+            for(Request request : queue) {
+                request.cancel(false);
+            }
+        }
+        queues.clear();
+        turns.clear();
+        queued = 0;
+        notifyAll();
+    }
+
+    /**
+     * Takes the next request from the game whose turn it is, waiting for one if there are none
+     *
+     * @return the request, or null once the pool is shut down
+     */
+    private synchronized Request take() throws InterruptedException {
+        while(turns.isEmpty() && !shutdown) {
+            wait();
+        }
+        if(shutdown) return null;
+
+        Object game = turns.poll();
+        ArrayDeque<Request> queue = queues.get(game);
+        Request request = queue.poll();
+        if(queue.isEmpty()) queues.remove(game);
+        else turns.add(game);
+        queued--;
+        notifyAll();
+        return request;
+    }
+
+    /**
+     * Returns the transposition table shared by the Bees of a board size
+     */
+    private synchronized TranspositionTable table(int gridSize) {
+        TranspositionTable table = tables.get(gridSize);
+        if(table == null) {
+            table = new TranspositionTable(tableMemory);
+            tables.put(gridSize, table);
+        }
+        return table;
+    }
+
+    /**
+     * Counts a move started on a board size, and starts a new generation of its table every MOVES_PER_GENERATION moves per worker
+     */
+    private synchronized void moveStarted(int gridSize) {
+        Integer count = moves.get(gridSize);
+        count = count == null ? 1 : count + 1;
+        moves.put(gridSize, count);
+        if(count % (workers.length * MOVES_PER_GENERATION) == 0) table(gridSize).newSearch();
+    }
+
+    /**
+     * Told when a move asked for with submit() is chosen. Both calls are made on the worker thread, which waits for them, so they should be quick.
+     */
+    public interface Callback {
+        public void moveChosen(ScoredMove move);
+
+        public void failed(Throwable e);
+    }
+
+    private class Worker implements Runnable {
+        // This worker's Bees, by board size and difficulty
+        private final HashMap<Integer, BeeGameAI> bees = new HashMap<Integer, BeeGameAI>();
+
+        @Override
+        public void run() {
+            try {
+                for(Request request = take(); request != null; request = take()) {
+                    Search search = request.search;
+                    BeeGameAI bee = bee(search.position.getGridSize(), search.difficulty);
+                    search.bee = bee;
+                    moveStarted(search.position.getGridSize());
+                    try {
+                        request.run();
+                    }
+                    catch(RuntimeException e) {
+                        // Thrown by a callback, which must not stop the worker
+                    }
+                    finally {
+                        synchronized(search) {
+                            search.bee = null;
+                            bee.setStopRequested(false);
+                        }
+                    }
+                }
+            }
+            catch(InterruptedException e) {
+                // Shut down
+            }
+        }
+
+        private BeeGameAI bee(int gridSize, int difficulty) {
+            int key = gridSize << 8 | difficulty;
+            BeeGameAI bee = bees.get(key);
+            if(bee == null) {
+                bee = new BeeGameAI(1, gridSize, AiTypes.beeDepth(difficulty), AiTypes.beeBeamSize(difficulty), table(gridSize), 1);
+                bee.setTableShared(true);
+                bees.put(key, bee);
+            }
+            return bee;
+        }
+    }
+
+    /**
+     * The search for a move, by the Bee of the worker that runs it
+     */
+    private static class Search implements Callable<ScoredMove> {
+        private final Position position;
+        private final int difficulty;
+        private final Budget budget;
+        // The Bee searching for the move, while it runs
+        private BeeGameAI bee;
+
+        Search(Position position, int difficulty, Budget budget) {
+            this.position = position;
+            this.difficulty = difficulty;
+            this.budget = budget;
+        }
+
+        @Override
+        public ScoredMove call() {
+            return bee.chooseMove(position, budget);
+        }
+    }
+
+    /**
+     * A move asked for, which is its own Future
+     */
+    private static class Request extends FutureTask<ScoredMove> {
+        private final Search search;
+        private final Callback callback;
+
+        Request(Search search, Callback callback) {
+            super(search);
+            this.search = search;
+            this.callback = callback;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // The worker is not interrupted, Bee is asked to stop instead
+            if(!super.cancel(false)) return false;
+            synchronized(search) {
+                if(search.bee != null) search.bee.setStopRequested(true);
+            }
+            return true;
+        }
+
+        @Override
+        protected void done() {
+            if(callback == null || isCancelled()) return;
+            try {
+                callback.moveChosen(get());
+            }
+            catch(Exception e) {
+                callback.failed(e.getCause() == null ? e : e.getCause());
+            }
+        }
+    }
+}
@@ -1,75 +1,183 @@
 package com.hex.ai;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
 import com.hex.core.AI;
 import com.hex.core.Game;
 import com.hex.core.GameAction;
-import com.hex.core.GamePiece;
 import com.hex.core.Point;
 
 /**
+ * Will's AI. It keeps track of the chain it is building and the bridges it holds from move to move, so it has to see every move of its own team's game: as an
+ * Engine it can only choose moves for its own team, one turn after another.
+ *
  * @author Will Harmon
  **/
-public class GameAI extends AI {
+public class GameAI extends AI implements Engine {
     private static final long serialVersionUID = 1L;
-    private GamePiece[][] gameBoard;
+    // The team of the piece on each cell, by x and y
+    private byte[][] gameBoard;
+    // The move chosen this turn
+    private transient Point chosenMove;
     // n is the leftmost AI move, m is the rightmost AI move
     private int[] n = { 0, 0 }, m = { 0, 0 };
-    // ArrayList of pair-pieces
-    private ArrayList<ArrayList<ArrayList<Integer>>> pairs = new ArrayList<ArrayList<ArrayList<Integer>>>();
+    // The bridges we hold, by cell x * gridSize + y
+    private final BridgeTable pairs = new BridgeTable();
     // ArrayList of the AI's state. Used when Undo is called.
     private final ArrayList<AIHistoryObject> history = new ArrayList<AIHistoryObject>();
     private int rand_a = 0;
     private int rand_b = 0;
+    // How long to wait before moving, in milliseconds
+    private long moveDelay = 500;
+    // The opening book for the first move, or null for none
+    private transient OpeningBook book;
 
     public GameAI(int team) {
         super(team);
+        book = OpeningBook.getDefault();
         while(rand_a == 0 && rand_b == 0) {
             rand_a = new Random().nextInt(3) - 1;
             rand_b = new Random().nextInt(3) - 1;
         }
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        book = OpeningBook.getDefault();
+    }
+
+    /**
+     * Sets the opening book the first move is taken from. The AI starts with the default book, and goes back to it when it is read from a stream.
+     * 
+     * @param book
+     *            the book, or null to play in the middle
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Sets how long the AI waits before playing a move in a game, so it does not answer instantly. The default is 500ms.
+     * 
+     * @param moveDelay
+     *            the delay in milliseconds, or 0 to move at once
+     */
+    public void setMoveDelay(long moveDelay) {
+        this.moveDelay = moveDelay;
+    }
+
+    /**
+     * The changes one turn made to the bridges, and n and m from before it
+     */
     public class AIHistoryObject implements Serializable {
         private static final long serialVersionUID = 1L;
-        ArrayList<ArrayList<ArrayList<Integer>>> pairs = new ArrayList<ArrayList<ArrayList<Integer>>>();;
         int[] n = { 0, 0 };
         int[] m = { 0, 0 };
+        // The bridges added and removed, three ints each: the two cells and (index << 1 | 1 if added)
+        int[] changes = new int[6];
+        int changeCount;
 
-        public AIHistoryObject(ArrayList<ArrayList<ArrayList<Integer>>> pairs, int[] n, int[] m) {
-            for(int i = 0; i < pairs.size(); i++) {
-                this.pairs.add(pairs.get(i));
-            }
+        public AIHistoryObject(int[] n, int[] m) {
             this.n[0] = n[0];
             this.n[1] = n[1];
             this.m[0] = m[0];
             this.m[1] = m[1];
         }
 
+        void record(int first, int second, int bridge, boolean added) {
+            if(changeCount * 3 == changes.length) changes = Arrays.copyOf(changes, changes.length * 2);
+            changes[changeCount * 3] = first;
+            changes[changeCount * 3 + 1] = second;
+            changes[changeCount * 3 + 2] = bridge << 1 | (added ? 1 : 0);
+            changeCount++;
+        }
+
+        /**
+         * Makes the changes to the bridges again
+         */
+        void redo(BridgeTable pairs) {
+            for(int i = 0; i < changeCount; i++) {
+                int bridge = changes[i * 3 + 2] >> 1;
+                if((changes[i * 3 + 2] & 1) != 0) pairs.insert(bridge, changes[i * 3], changes[i * 3 + 1]);
+                else pairs.remove(bridge);
+            }
+        }
+
+        /**
+         * Takes the changes to the bridges back, last first, so every bridge ends up where it was
+         */
+        void undo(BridgeTable pairs) {
+            for(int i = changeCount - 1; i >= 0; i--) {
+                int bridge = changes[i * 3 + 2] >> 1;
+                if((changes[i * 3 + 2] & 1) != 0) pairs.remove(bridge);
+                else pairs.insert(bridge, changes[i * 3], changes[i * 3 + 1]);
+            }
+        }
+
         @Override
         public String toString() {
-            return pairs.toString() + " : " + n.toString() + " : " + m.toString();
+            return changeCount + " changes : " + Arrays.toString(n) + " : " + Arrays.toString(m);
         }
     }
 
     @Override
     public void getPlayerTurn(Game game) {
         super.getPlayerTurn(game);
-        this.gameBoard = game.gamePieces;
-        AIHistoryObject state = new AIHistoryObject(pairs, n, m);
+
+        // Sleep to stop instantaneous playing
+        try {
+            for(long waited = 0; waited < moveDelay && !game.isGameOver(); waited += 50) {
+                Thread.sleep(Math.min(50, moveDelay - waited));
+            }
+        }
+        catch(InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        ScoredMove move = chooseMove(Position.of(game, team), Budget.DEFAULT);
+        if(move != null && !getSkipMove()) GameAction.makeMove(this, move.move, game);
+    }
+
+    /**
+     * Chooses the AI's next move. The position has to follow on from the last one the AI chose a move in, and the budget is ignored, since the AI does not
+     * search.
+     * 
+     * @throws IllegalArgumentException
+     *             if it is not the AI's team to move
+     */
+    @Override
+    public ScoredMove chooseMove(Position position, Budget budget) {
+        if(position.getTeam() != team) throw new IllegalArgumentException("GameAI plays team " + team + ", not team " + position.getTeam());
+        int size = position.getGridSize();
+        byte[][] previous = gameBoard != null && gameBoard.length == size ? gameBoard : null;
+        gameBoard = new byte[size][size];
+        for(int x = 0; x < size; x++) {
+            for(int y = 0; y < size; y++) {
+                gameBoard[x][y] = (byte) position.get(x, y);
+
+                // The pairs only hear of the cells that changed since the last turn
+                boolean wasTaken = previous != null && previous[x][y] != 0;
+                if((gameBoard[x][y] != 0) != wasTaken) pairs.setTaken(cell(x, y), !wasTaken);
+            }
+        }
+        AIHistoryObject state = new AIHistoryObject(n, m);
         history.add(state);
-        makeMove(game);
+        chosenMove = null;
+        makeMove(position);
+        return chosenMove == null ? null : new ScoredMove(chosenMove, 0);
     }
 
     @Override
     public void undoCalled() {
         if(history.size() > 0) {
             AIHistoryObject previousState = history.get(history.size() - 1);
-            pairs = previousState.pairs;
+            previousState.undo(pairs);
             n = previousState.n;
             m = previousState.m;
             history.remove(history.size() - 1);
@@ -85,7 +193,7 @@ public class GameAI extends AI {
         return n[0] - 2 >= 0 && n[1] - 1 >= 0 && n[1] + 1 <= gameBoard.length - 1;
     }
 
-    private void makeMove(Game game) {
+    private void makeMove(Position position) {
         /**
          * Will's AI
          * */
@@ -98,215 +206,158 @@ public class GameAI extends AI {
             y++;
         }
 
-        // Sleep to stop instantaneous playing
         try {
-            for(int i = 0; i < 10; i++) {
-                Thread.sleep(50);
-                if(game.isGameOver()) break;
+            // Play the book move if this is the first move. Later moves
+            // follow on from it, so it is played the same way as the middle.
+            ScoredMove bookEntry = history.size() == 1 && book != null ? book.lookup(position) : null;
+            if(bookEntry != null) {
+                Point bookMove = bookEntry.move;
+                n[x] = bookMove.x;
+                n[y] = bookMove.y;
+                m[x] = bookMove.x;
+                m[y] = bookMove.y;
+                sendMove(bookMove.x, bookMove.y);
+
+                return;
             }
-        }
-        catch(InterruptedException e) {
-            e.printStackTrace();
-        }
 
-        try {
             // Play in the middle if possible
             int mid = 1;
             mid *= (gameBoard.length - 1) / 2;
-            if(gameBoard[mid][mid].getTeam() == 0) {
+            if(gameBoard[mid][mid] == 0) {
                 n[0] = mid;// horizontal
                 n[1] = mid;// vertical
                 m[0] = mid;
                 m[1] = mid;
-                sendMove(game, mid, mid);
+                sendMove(mid, mid);
 
                 return;
             }
-            else if(gameBoard[mid][mid].getTeam() != team && gameBoard[mid + rand_a][mid + rand_b].getTeam() == 0) {
+            else if(gameBoard[mid][mid] != team && gameBoard[mid + rand_a][mid + rand_b] == 0) {
                 n[x] = mid + rand_a;// horizontal
                 n[y] = mid + rand_b;// vertical
                 m[x] = mid + rand_a;
                 m[y] = mid + rand_b;
-                sendMove(game, mid + rand_a, mid + rand_b);
+                sendMove(mid + rand_a, mid + rand_b);
 
                 return;
             }
 
             // Add the edges as pairs after we've reached both sides of the map
             if(n[0] - 1 == 0) {
-                ArrayList<ArrayList<Integer>> pair = new ArrayList<ArrayList<Integer>>();
-                ArrayList<Integer> cord1 = new ArrayList<Integer>();
-                ArrayList<Integer> cord2 = new ArrayList<Integer>();
-                cord1.add(n[0] - 1);
-                cord1.add(n[1]);
-                pair.add(cord1);
-                cord2.add(n[0] - 1);
-                cord2.add(n[1] + 1);
-                pair.add(cord2);
-                pairs.add(pair);
+                addBridge(n[0] - 1, n[1], n[0] - 1, n[1] + 1);
 
                 n[0] = n[0] - 1;
             }
             if(m[0] + 1 == gameBoard.length - 1) {
-                ArrayList<ArrayList<Integer>> pair = new ArrayList<ArrayList<Integer>>();
-                ArrayList<Integer> cord1 = new ArrayList<Integer>();
-                ArrayList<Integer> cord2 = new ArrayList<Integer>();
-                cord1.add(m[0] + 1);
-                cord1.add(m[1]);
-                pair.add(cord1);
-                cord2.add(m[0] + 1);
-                cord2.add(m[1] - 1);
-                pair.add(cord2);
-                pairs.add(pair);
+                addBridge(m[0] + 1, m[1], m[0] + 1, m[1] - 1);
 
                 m[0] = m[0] + 1;
             }
 
             // Check if one of our pairs is being attacked, and fill in the
-            // alternate if so
-            for(int i = 0; i < pairs.size(); i++) {
-                if(gameBoard[pairs.get(i).get(0).get(x)][pairs.get(i).get(0).get(y)].getTeam() == 0 || gameBoard[pairs.get(i).get(1).get(x)][pairs.get(i).get(1).get(y)].getTeam() == 0) {
-                    if(gameBoard[pairs.get(i).get(0).get(x)][pairs.get(i).get(0).get(y)].getTeam() != 0) {
-                        sendMove(game, pairs.get(i).get(1).get(x), pairs.get(i).get(1).get(y));
-                        pairs.remove(i);
-                        return;
-                    }
-                    else if(gameBoard[pairs.get(i).get(1).get(x)][pairs.get(i).get(1).get(y)].getTeam() != 0) {
-                        sendMove(game, pairs.get(i).get(0).get(x), pairs.get(i).get(0).get(y));
-                        pairs.remove(i);
-                        return;
-                    }
-                }
-                else {
-                    pairs.remove(i);
-                }
+            // alternate if so. Pairs that are already lost are dropped.
+            for(int i = pairs.nextBroken(0); i >= 0; i = pairs.nextBroken(i)) {
+                int first = pairs.first(i);
+                int second = pairs.second(i);
+                boolean firstTaken = gameBoard[first / gameBoard.length][first % gameBoard.length] != 0;
+                boolean secondTaken = gameBoard[second / gameBoard.length][second % gameBoard.length] != 0;
+                removeBridge(i);
+                if(firstTaken && secondTaken) continue;
+                int cell = firstTaken ? second : first;
+                sendMove(cell / gameBoard.length, cell % gameBoard.length);
+                return;
             }
 
             // Check if they were sneaky and played in front of us
-            if(right() && gameBoard[m[x] + 0 * x + 1 * y][m[y] + 1 * x + 0 * y].getTeam() != 0) {
-                if(gameBoard[m[x] - 1 * x + 1 * y][m[y] - 1 * y + 1 * x].getTeam() == 0) {
+            if(right() && gameBoard[m[x] + 0 * x + 1 * y][m[y] + 1 * x + 0 * y] != 0) {
+                if(gameBoard[m[x] - 1 * x + 1 * y][m[y] - 1 * y + 1 * x] == 0) {
                     m[0] = m[0] + 1;
                     m[1] = m[1] - 1;
 
-                    sendMove(game, m[x], m[y]);
+                    sendMove(m[x], m[y]);
                     return;
                 }
-                else if(gameBoard[m[x] + 1 * x + 0 * y][m[y] + 1 * y + 0 * x].getTeam() == 0) {
+                else if(gameBoard[m[x] + 1 * x + 0 * y][m[y] + 1 * y + 0 * x] == 0) {
                     m[0] = m[0];
                     m[1] = m[1] + 1;
 
-                    sendMove(game, m[x], m[y]);
+                    sendMove(m[x], m[y]);
                     return;
                 }
             }
-            if(right() && (gameBoard[m[x] - 1 * x + 1 * y][m[y] - 1 * y + 1 * x].getTeam() != 0 || gameBoard[m[x] + 1 * x + 0 * y][m[y] + 1 * y + 0 * x].getTeam() != 0) && gameBoard[m[x] + 0 * x + 1 * y][m[y] + 0 * y + 1 * x].getTeam() == 0) {
+            if(right() && (gameBoard[m[x] - 1 * x + 1 * y][m[y] - 1 * y + 1 * x] != 0 || gameBoard[m[x] + 1 * x + 0 * y][m[y] + 1 * y + 0 * x] != 0) && gameBoard[m[x] + 0 * x + 1 * y][m[y] + 0 * y + 1 * x] == 0) {
                 m[0] = m[0] + 1;
                 m[1] = m[1];
 
-                sendMove(game, m[x], m[y]);
+                sendMove(m[x], m[y]);
                 return;
             }
             // Check if they were sneakier and played behind us
-            if(left() && gameBoard[n[x] + 0 * x - 1 * y][n[y] + 0 * y - 1 * x].getTeam() != 0) {
-                if(gameBoard[n[x] + 1 * x - 1 * y][n[y] + 1 * y - 1 * x].getTeam() == 0) {
+            if(left() && gameBoard[n[x] + 0 * x - 1 * y][n[y] + 0 * y - 1 * x] != 0) {
+                if(gameBoard[n[x] + 1 * x - 1 * y][n[y] + 1 * y - 1 * x] == 0) {
                     n[0] = n[0] - 1;
                     n[1] = n[1] + 1;
 
-                    sendMove(game, n[x], n[y]);
+                    sendMove(n[x], n[y]);
                     return;
                 }
-                else if(gameBoard[n[x] - 1 * x + 0 * y][n[y] - 1 * y + 0 * x].getTeam() == 0) {
+                else if(gameBoard[n[x] - 1 * x + 0 * y][n[y] - 1 * y + 0 * x] == 0) {
                     n[0] = n[0];
                     n[1] = n[1] - 1;
 
-                    sendMove(game, n[x], n[y]);
+                    sendMove(n[x], n[y]);
                     return;
                 }
             }
-            if(left() && (gameBoard[n[x] + 1 * x - 1 * y][n[y] + 1 * y - 1 * x].getTeam() != 0 || gameBoard[n[x] - 1 * x + 0 * y][n[y] - 1 * y + 0 * x].getTeam() != 0) && gameBoard[n[x] + 0 * x - 1 * y][n[y] + 0 * y - 1 * x].getTeam() == 0) {
+            if(left() && (gameBoard[n[x] + 1 * x - 1 * y][n[y] + 1 * y - 1 * x] != 0 || gameBoard[n[x] - 1 * x + 0 * y][n[y] - 1 * y + 0 * x] != 0) && gameBoard[n[x] + 0 * x - 1 * y][n[y] + 0 * y - 1 * x] == 0) {
                 n[0] = n[0] - 1;
                 n[1] = n[1];
 
-                sendMove(game, n[x], n[y]);
+                sendMove(n[x], n[y]);
                 return;
             }
 
             // Check if we should extend to the left
             if(left()) {
-                if(gameBoard[n[x] - 1 * x - 1 * y][n[y] - 1 * y - 1 * x].getTeam() != 0 && gameBoard[n[x] + 1 * x - 2 * y][n[y] + 1 * y - 2 * x].getTeam() == 0) {
-                    ArrayList<ArrayList<Integer>> pair = new ArrayList<ArrayList<Integer>>();
-                    ArrayList<Integer> cord1 = new ArrayList<Integer>();
-                    ArrayList<Integer> cord2 = new ArrayList<Integer>();
-                    cord1.add(n[0] - 1);
-                    cord1.add(n[1]);
-                    pair.add(cord1);
-                    cord2.add(n[0] - 1);
-                    cord2.add(n[1] + 1);
-                    pair.add(cord2);
-                    pairs.add(pair);
+                if(gameBoard[n[x] - 1 * x - 1 * y][n[y] - 1 * y - 1 * x] != 0 && gameBoard[n[x] + 1 * x - 2 * y][n[y] + 1 * y - 2 * x] == 0) {
+                    addBridge(n[0] - 1, n[1], n[0] - 1, n[1] + 1);
 
                     n[0] = n[0] - 2;
                     n[1] = n[1] + 1;
 
-                    sendMove(game, n[x], n[y]);
+                    sendMove(n[x], n[y]);
                     return;
                 }
-                else if(gameBoard[n[x] + 1 * x - 2 * y][n[y] + 1 * y - 2 * x].getTeam() != 0 && gameBoard[n[x] - 1 * x - 1 * y][n[y] - 1 * y - 1 * x].getTeam() == 0) {
-                    ArrayList<ArrayList<Integer>> pair = new ArrayList<ArrayList<Integer>>();
-                    ArrayList<Integer> cord1 = new ArrayList<Integer>();
-                    ArrayList<Integer> cord2 = new ArrayList<Integer>();
-                    cord1.add(n[0]);
-                    cord1.add(n[1] - 1);
-                    pair.add(cord1);
-                    cord2.add(n[0] - 1);
-                    cord2.add(n[1]);
-                    pair.add(cord2);
-                    pairs.add(pair);
+                else if(gameBoard[n[x] + 1 * x - 2 * y][n[y] + 1 * y - 2 * x] != 0 && gameBoard[n[x] - 1 * x - 1 * y][n[y] - 1 * y - 1 * x] == 0) {
+                    addBridge(n[0], n[1] - 1, n[0] - 1, n[1]);
 
                     n[0] = n[0] - 1;
                     n[1] = n[1] - 1;
 
-                    sendMove(game, n[x], n[y]);
+                    sendMove(n[x], n[y]);
                     return;
                 }
             }
 
             // Check if we should extend to the right
             if(right()) {
-                if(gameBoard[m[x] - 1 * x + 2 * y][m[y] - 1 * y + 2 * x].getTeam() != 0 && gameBoard[m[x] + 1 * x + 1 * y][m[y] + 1 * y + 1 * x].getTeam() == 0) {
-                    ArrayList<ArrayList<Integer>> pair = new ArrayList<ArrayList<Integer>>();
-                    ArrayList<Integer> cord1 = new ArrayList<Integer>();
-                    ArrayList<Integer> cord2 = new ArrayList<Integer>();
-                    cord1.add(m[0] + 1);
-                    cord1.add(m[1]);
-                    pair.add(cord1);
-                    cord2.add(m[0]);
-                    cord2.add(m[1] + 1);
-                    pair.add(cord2);
-                    pairs.add(pair);
+                if(gameBoard[m[x] - 1 * x + 2 * y][m[y] - 1 * y + 2 * x] != 0 && gameBoard[m[x] + 1 * x + 1 * y][m[y] + 1 * y + 1 * x] == 0) {
+                    addBridge(m[0] + 1, m[1], m[0], m[1] + 1);
 
                     m[0] = m[0] + 1;
                     m[1] = m[1] + 1;
 
-                    sendMove(game, m[x], m[y]);
+                    sendMove(m[x], m[y]);
                     return;
                 }
-                else if(gameBoard[m[x] + 1 * x + 1 * y][m[y] + 1 * y + 1 * x].getTeam() != 0 && gameBoard[m[x] - 1 * x + 2 * y][m[y] - 1 * y + 2 * x].getTeam() == 0) {
-                    ArrayList<ArrayList<Integer>> pair = new ArrayList<ArrayList<Integer>>();
-                    ArrayList<Integer> cord1 = new ArrayList<Integer>();
-                    ArrayList<Integer> cord2 = new ArrayList<Integer>();
-                    cord1.add(m[0] + 1);
-                    cord1.add(m[1]);
-                    pair.add(cord1);
-                    cord2.add(m[0] + 1);
-                    cord2.add(m[1] - 1);
-                    pair.add(cord2);
-                    pairs.add(pair);
+                else if(gameBoard[m[x] + 1 * x + 1 * y][m[y] + 1 * y + 1 * x] != 0 && gameBoard[m[x] - 1 * x + 2 * y][m[y] - 1 * y + 2 * x] == 0) {
+                    addBridge(m[0] + 1, m[1], m[0] + 1, m[1] - 1);
 
                     m[0] = m[0] + 2;
                     m[1] = m[1] - 1;
 
-                    sendMove(game, m[x], m[y]);
+                    sendMove(m[x], m[y]);
                     return;
                 }
             }
@@ -314,85 +365,51 @@ public class GameAI extends AI {
             rand *= Math.random();
 
             // Extend left if we haven't gone right
-            if(left() && rand == 0 && gameBoard[n[x] + 1 * x - 2 * y][n[y] + 1 * y - 2 * x].getTeam() == 0) {
-                ArrayList<ArrayList<Integer>> pair = new ArrayList<ArrayList<Integer>>();
-                ArrayList<Integer> cord1 = new ArrayList<Integer>();
-                ArrayList<Integer> cord2 = new ArrayList<Integer>();
-                cord1.add(n[0] - 1);
-                cord1.add(n[1]);
-                pair.add(cord1);
-                cord2.add(n[0] - 1);
-                cord2.add(n[1] + 1);
-                pair.add(cord2);
-                pairs.add(pair);
+            if(left() && rand == 0 && gameBoard[n[x] + 1 * x - 2 * y][n[y] + 1 * y - 2 * x] == 0) {
+                addBridge(n[0] - 1, n[1], n[0] - 1, n[1] + 1);
 
                 n[0] = n[0] - 2;
                 n[1] = n[1] + 1;
 
-                sendMove(game, n[x], n[y]);
+                sendMove(n[x], n[y]);
                 return;
             }
-            else if(left() && rand == 1 && gameBoard[n[x] - 1 * x - 1 * y][n[y] - 1 * y - 1 * x].getTeam() == 0) {
-                ArrayList<ArrayList<Integer>> pair = new ArrayList<ArrayList<Integer>>();
-                ArrayList<Integer> cord1 = new ArrayList<Integer>();
-                ArrayList<Integer> cord2 = new ArrayList<Integer>();
-                cord1.add(n[0]);
-                cord1.add(n[1] - 1);
-                pair.add(cord1);
-                cord2.add(n[0] - 1);
-                cord2.add(n[1]);
-                pair.add(cord2);
-                pairs.add(pair);
+            else if(left() && rand == 1 && gameBoard[n[x] - 1 * x - 1 * y][n[y] - 1 * y - 1 * x] == 0) {
+                addBridge(n[0], n[1] - 1, n[0] - 1, n[1]);
 
                 n[0] = n[0] - 1;
                 n[1] = n[1] - 1;
 
-                sendMove(game, n[x], n[y]);
+                sendMove(n[x], n[y]);
                 return;
             }
             // Extend right if we haven't gone left
-            if(right() && rand == 0 && gameBoard[m[x] - 1 * x + 2 * y][m[y] - 1 * y + 2 * x].getTeam() == 0) {
-                ArrayList<ArrayList<Integer>> pair = new ArrayList<ArrayList<Integer>>();
-                ArrayList<Integer> cord1 = new ArrayList<Integer>();
-                ArrayList<Integer> cord2 = new ArrayList<Integer>();
-                cord1.add(m[0] + 1);
-                cord1.add(m[1]);
-                pair.add(cord1);
-                cord2.add(m[0] + 1);
-                cord2.add(m[1] - 1);
-                pair.add(cord2);
-                pairs.add(pair);
+            if(right() && rand == 0 && gameBoard[m[x] - 1 * x + 2 * y][m[y] - 1 * y + 2 * x] == 0) {
+                addBridge(m[0] + 1, m[1], m[0] + 1, m[1] - 1);
 
                 m[0] = m[0] + 2;
                 m[1] = m[1] - 1;
 
-                sendMove(game, m[x], m[y]);
+                sendMove(m[x], m[y]);
                 return;
             }
-            else if(right() && rand == 1 && gameBoard[m[x] + 1 * x + 1 * y][m[y] + 1 * y + 1 * x].getTeam() == 0) {
-                ArrayList<ArrayList<Integer>> pair = new ArrayList<ArrayList<Integer>>();
-                ArrayList<Integer> cord1 = new ArrayList<Integer>();
-                ArrayList<Integer> cord2 = new ArrayList<Integer>();
-                cord1.add(m[0] + 1);
-                cord1.add(m[1]);
-                pair.add(cord1);
-                cord2.add(m[0]);
-                cord2.add(m[1] + 1);
-                pair.add(cord2);
-                pairs.add(pair);
+            else if(right() && rand == 1 && gameBoard[m[x] + 1 * x + 1 * y][m[y] + 1 * y + 1 * x] == 0) {
+                addBridge(m[0] + 1, m[1], m[0], m[1] + 1);
 
                 m[0] = m[0] + 1;
                 m[1] = m[1] + 1;
 
-                sendMove(game, m[x], m[y]);
+                sendMove(m[x], m[y]);
                 return;
             }
 
             // Fill in the pairs after we've reached both sides of the map
-            if(!left() && !right() && pairs.size() > 0) {
+            while(!left() && !right() && pairs.size() > 0) {
                 // Play a random pair
-                sendMove(game, pairs.get(0).get(1).get(x), pairs.get(0).get(1).get(y));
-                pairs.remove(0);
+                int cell = pairs.second(0);
+                removeBridge(0);
+                if(gameBoard[cell / gameBoard.length][cell % gameBoard.length] != 0) continue;
+                sendMove(cell / gameBoard.length, cell % gameBoard.length);
 
                 return;
             }
@@ -403,18 +420,18 @@ public class GameAI extends AI {
         int moves = 0;
         for(int a = 0; a < gameBoard.length; a++) {
             for(int b = 0; b < gameBoard[a].length; b++) {
-                if(gameBoard[a][b].getTeam() == 0) moves++;
+                if(gameBoard[a][b] == 0) moves++;
             }
         }
         moves *= Math.random();
         moves++;
         for(int a = 0; a < gameBoard.length; a++) {
             for(int b = 0; b < gameBoard[a].length; b++) {
-                if(gameBoard[a][b].getTeam() == 0) {
+                if(gameBoard[a][b] == 0) {
                     moves--;
                 }
                 if(moves == 0) {
-                    sendMove(game, a, b);
+                    sendMove(a, b);
                     moves = -10;
                 }
             }
@@ -423,8 +440,29 @@ public class GameAI extends AI {
         return;
     }
 
-    private void sendMove(Game game, int x, int y) {
-        if(!getSkipMove()) GameAction.makeMove(this, new Point(x, y), game);
+    /**
+     * Adds a pair, given the way n and m are, with the coordinates swapped for team 2
+     */
+    private void addBridge(int first0, int first1, int second0, int second1) {
+        int size = gameBoard.length;
+        if(Math.min(Math.min(first0, first1), Math.min(second0, second1)) < 0 || Math.max(Math.max(first0, first1), Math.max(second0, second1)) >= size) return;
+        int first = team == 2 ? cell(first1, first0) : cell(first0, first1);
+        int second = team == 2 ? cell(second1, second0) : cell(second0, second1);
+        int bridge = pairs.add(first, second);
+        history.get(history.size() - 1).record(first, second, bridge, true);
+    }
+
+    private void removeBridge(int bridge) {
+        history.get(history.size() - 1).record(pairs.first(bridge), pairs.second(bridge), bridge, false);
+        pairs.remove(bridge);
+    }
+
+    private int cell(int x, int y) {
+        return x * gameBoard.length + y;
+    }
+
+    private void sendMove(int x, int y) {
+        if(chosenMove == null) chosenMove = new Point(x, y);
     }
 
     @Override
@@ -437,8 +475,12 @@ public class GameAI extends AI {
     public void setSaveState(Serializable state) {
         List<AIHistoryObject> history = (List<AIHistoryObject>) state;
         this.history.clear();
+        pairs.clear();
+        // The pairs are told every cell that is taken on the next turn
+        gameBoard = null;
         for(AIHistoryObject ho : history) {
             this.history.add(ho);
+            ho.redo(pairs);
         }
         undoCalled();
     }
@@ -0,0 +1,349 @@
+package com.hex.ai;
+
+import java.util.Arrays;
+
+/**
+ * Finds virtual connections on a Bee board with H-search.
+ *
+ * The groups of a colour are its chains, including the two borders, and the empty cells inside the border. Two groups are virtually connected (a VC) if they
+ * stay connected whatever the opponent does, as long as the colour answers inside the carrier, a set of empty cells. They are semi-connected (an SC) if they
+ * would be once the colour plays one more move, the key, which is part of the carrier.
+ *
+ * Connections are built from the bottom up. Neighbouring groups are connected with an empty carrier. The AND rule joins two VCs through a middle group: through
+ * a chain the result is a VC, through an empty cell it is an SC keyed by that cell. The OR rule turns a set of SCs between the same two groups whose carriers
+ * have nothing in common into a VC, since the opponent can not stop them all with one move.
+ *
+ * If the opponent has SCs between its two borders, the colour to move has to play in every one of their carriers or lose, which gives the must-play region.
+ * Every rule is sound, so the region is never too small; the search only stops early, within fixed limits, which can leave it larger than necessary.
+ */
+final class HSearch {
+    // The most connections kept between one pair of groups
+    private static final int MAX_VCS = 3, MAX_SCS = 8;
+    // The most cells in a carrier
+    private static final int MAX_CARRIER = 24;
+    // The most connections found in one search
+    private static final int MAX_CONNECTIONS = 8192;
+
+    private final BitBoard board;
+    private final Chains chains;
+    private final int words;
+    private final int[] adjacent;
+
+    // The group of each cell, or -1, and for each group its cell (for an empty cell) or root (for a chain)
+    private final int[] groupOf;
+    private final int[] groupCell;
+    private final boolean[] groupIsChain;
+    private int groupCount;
+
+    // The connections, one carrier of words longs each
+    private final long[] carriers;
+    private final int[] first;
+    private final int[] second;
+    private final boolean[] semi;
+    // The next connection of the same pair, and of the same group for each end
+    private final int[] nextOfPair;
+    private final int[] nextOfFirst;
+    private final int[] nextOfSecond;
+    private int connectionCount;
+
+    // The first VC and SC of each pair of groups, indexed first * cells + second with first < second
+    private final int[] vcOfPair;
+    private final int[] scOfPair;
+    // The first VC of each group
+    private final int[] vcOfGroup;
+
+    // Scratch space
+    private final long[] empty;
+    private final long[] union;
+    private final long[] common;
+    private final long[] joined;
+    private final long[] neighbourhood;
+
+    /**
+     * Constructor for the HSearch class
+     *
+     * @param board
+     *            the board to search
+     * @param chains
+     *            the chains of the board, kept up to date by the caller
+     */
+    HSearch(BitBoard board, Chains chains) {
+        this.board = board;
+        this.chains = chains;
+        this.words = board.words();
+        this.adjacent = board.adjacency();
+        int cells = board.cells();
+        groupOf = new int[cells];
+        groupCell = new int[cells];
+        groupIsChain = new boolean[cells];
+        carriers = new long[MAX_CONNECTIONS * words];
+        first = new int[MAX_CONNECTIONS];
+        second = new int[MAX_CONNECTIONS];
+        semi = new boolean[MAX_CONNECTIONS];
+        nextOfPair = new int[MAX_CONNECTIONS];
+        nextOfFirst = new int[MAX_CONNECTIONS];
+        nextOfSecond = new int[MAX_CONNECTIONS];
+        vcOfPair = new int[cells * cells];
+        scOfPair = new int[cells * cells];
+        vcOfGroup = new int[cells];
+        empty = new long[words];
+        union = new long[words];
+        common = new long[words];
+        joined = new long[words];
+        neighbourhood = new long[words];
+    }
+
+    /**
+     * Finds the cells the colour to move has to play in to stop the other colour from connecting its borders with one more move
+     *
+     * @param colour
+     *            the colour to move
+     * @param region
+     *            the bitset to fill with the must-play region
+     * @return true if there is a must-play region. False if the other colour threatens nothing, or has already won whatever the colour to move does, in which
+     *         case any move is as good as the region.
+     */
+    boolean mustPlay(int colour, long[] region) {
+        int other = colour == BitBoard.RED ? BitBoard.BLUE : BitBoard.RED;
+        search(other);
+        int last = board.width() - 1;
+        int a = groupOf[other == BitBoard.RED ? board.cell(1, 0) : board.cell(0, 1)];
+        int b = groupOf[other == BitBoard.RED ? board.cell(1, last) : board.cell(last, 1)];
+        if(a == b || vcOfPair[pair(a, b)] >= 0) return false;
+        int sc = scOfPair[pair(a, b)];
+        if(sc < 0) return false;
+
+        // Every threat has to be stopped inside its own carrier
+        board.emptyInterior(region);
+        for(; sc >= 0; sc = nextOfPair[sc]) {
+            int base = sc * words;
+            for(int w = 0; w < words; w++) {
+                region[w] &= carriers[base + w];
+            }
+        }
+        for(int w = 0; w < words; w++) {
+            if(region[w] != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the dead cells from a set of empty cells: cells whose neighbours are all pieces, and no more than one chain of each colour, so a piece on them
+     * would connect nothing
+     */
+    void removeDead(long[] cells) {
+        for(int cell = BitBoard.next(cells, 0); cell >= 0; cell = BitBoard.next(cells, cell + 1)) {
+            int redChain = -1;
+            int blueChain = -1;
+            boolean dead = true;
+            for(int k = cell * 6; k < cell * 6 + 6 && dead; k++) {
+                int neighbour = adjacent[k];
+                if(neighbour < 0) continue;
+                int colour = board.get(neighbour);
+                if(colour == 0) {
+                    dead = false;
+                    continue;
+                }
+                int root = chains.find(neighbour);
+                if(colour == BitBoard.RED) {
+                    if(redChain >= 0 && redChain != root) dead = false;
+                    redChain = root;
+                }
+                else {
+                    if(blueChain >= 0 && blueChain != root) dead = false;
+                    blueChain = root;
+                }
+            }
+            if(dead) cells[cell >>> 6] &= ~(1L << cell);
+        }
+    }
+
+    /**
+     * Finds the connections of a colour
+     */
+    private void search(int colour) {
+        // Makes a group of every chain of the colour and every empty cell
+        Arrays.fill(groupOf, -1);
+        groupCount = 0;
+        long[] pieces = board.pieces(colour);
+        for(int cell = BitBoard.next(pieces, 0); cell >= 0; cell = BitBoard.next(pieces, cell + 1)) {
+            int root = chains.find(cell);
+            if(groupOf[root] < 0) {
+                groupOf[root] = groupCount;
+                groupCell[groupCount] = root;
+                groupIsChain[groupCount] = true;
+                groupCount++;
+            }
+            groupOf[cell] = groupOf[root];
+        }
+        board.emptyInterior(empty);
+        for(int cell = BitBoard.next(empty, 0); cell >= 0; cell = BitBoard.next(empty, cell + 1)) {
+            groupOf[cell] = groupCount;
+            groupCell[groupCount] = cell;
+            groupIsChain[groupCount] = false;
+            groupCount++;
+        }
+        int cells = groupOf.length;
+        for(int a = 0; a < groupCount; a++) {
+            Arrays.fill(vcOfPair, a * cells, a * cells + groupCount, -1);
+            Arrays.fill(scOfPair, a * cells, a * cells + groupCount, -1);
+        }
+        Arrays.fill(vcOfGroup, 0, groupCount, -1);
+        connectionCount = 0;
+
+        // Neighbouring groups are connected with an empty carrier
+        Arrays.fill(union, 0);
+        for(int g = 0; g < groupCount; g++) {
+            Arrays.fill(neighbourhood, 0);
+            if(groupIsChain[g]) chains.addNeighbourhood(groupCell[g], neighbourhood);
+            else board.neighbourMask(groupCell[g], neighbourhood, 0);
+            for(int cell = BitBoard.next(neighbourhood, 0); cell >= 0; cell = BitBoard.next(neighbourhood, cell + 1)) {
+                int h = groupOf[cell];
+                if(h > g) addVC(g, h, union);
+            }
+        }
+
+        // Combines every VC with the VCs found before it, in the order they were found
+        for(int vc = 0; vc < connectionCount; vc++) {
+            if(semi[vc]) continue;
+            and(vc, first[vc], second[vc]);
+            and(vc, second[vc], first[vc]);
+        }
+    }
+
+    /**
+     * Applies the AND rule to a VC and every other VC of one of its groups
+     *
+     * @param middle
+     *            the group the VCs share
+     * @param end
+     *            the other group of the VC
+     */
+    private void and(int vc, int middle, int end) {
+        int base = vc * words;
+        for(int other = vcOfGroup[middle]; other >= 0; other = first[other] == middle ? nextOfFirst[other] : nextOfSecond[other]) {
+            if(connectionCount == MAX_CONNECTIONS) return;
+            if(other == vc) continue;
+            int far = first[other] == middle ? second[other] : first[other];
+            if(far == end) continue;
+            int otherBase = other * words;
+
+            // The carriers may not overlap, or hold the other's end
+            boolean disjoint = true;
+            for(int w = 0; w < words && disjoint; w++) {
+                disjoint = (carriers[base + w] & carriers[otherBase + w]) == 0;
+            }
+            if(!disjoint || inCarrier(far, base) || inCarrier(end, otherBase)) continue;
+            int size = 0;
+            for(int w = 0; w < words; w++) {
+                union[w] = carriers[base + w] | carriers[otherBase + w];
+                size += Long.bitCount(union[w]);
+            }
+            if(size > MAX_CARRIER) continue;
+
+            // Only keeps connections between two empty cells
+            // if they are neighbours, which keeps the search small.
+            if(!groupIsChain[end] && !groupIsChain[far]) continue;
+            if(groupIsChain[middle]) {
+                addVC(end, far, union);
+            }
+            else {
+                int key = groupCell[middle];
+                union[key >>> 6] |= 1L << key;
+                addSC(end, far, union);
+            }
+        }
+    }
+
+    /**
+     * Checks if a group is an empty cell inside a carrier
+     */
+    private boolean inCarrier(int group, int base) {
+        if(groupIsChain[group]) return false;
+        int cell = groupCell[group];
+        return (carriers[base + (cell >>> 6)] & 1L << cell) != 0;
+    }
+
+    private int pair(int a, int b) {
+        return a < b ? a * groupOf.length + b : b * groupOf.length + a;
+    }
+
+    private void addVC(int a, int b, long[] carrier) {
+        int pair = pair(a, b);
+        if(count(vcOfPair[pair]) >= MAX_VCS || containsSubset(vcOfPair[pair], carrier)) return;
+        int vc = add(a, b, carrier, false);
+        if(vc < 0) return;
+        nextOfPair[vc] = vcOfPair[pair];
+        vcOfPair[pair] = vc;
+        nextOfFirst[vc] = vcOfGroup[a];
+        vcOfGroup[a] = vc;
+        nextOfSecond[vc] = vcOfGroup[b];
+        vcOfGroup[b] = vc;
+    }
+
+    private void addSC(int a, int b, long[] carrier) {
+        int pair = pair(a, b);
+        if(count(scOfPair[pair]) >= MAX_SCS || containsSubset(vcOfPair[pair], carrier) || containsSubset(scOfPair[pair], carrier)) return;
+        int sc = add(a, b, carrier, true);
+        if(sc < 0) return;
+        nextOfPair[sc] = scOfPair[pair];
+        scOfPair[pair] = sc;
+
+        // OR rule: shrinks the common part of the SCs one at a time,
+        // and if nothing is left, they make a VC together.
+        System.arraycopy(carrier, 0, common, 0, words);
+        System.arraycopy(carrier, 0, joined, 0, words);
+        for(int other = nextOfPair[sc]; other >= 0; other = nextOfPair[other]) {
+            int base = other * words;
+            boolean shrinks = false;
+            boolean emptied = true;
+            for(int w = 0; w < words; w++) {
+                long next = common[w] & carriers[base + w];
+                if(next != common[w]) shrinks = true;
+                if(next != 0) emptied = false;
+            }
+            if(!shrinks) continue;
+            for(int w = 0; w < words; w++) {
+                common[w] &= carriers[base + w];
+                joined[w] |= carriers[base + w];
+            }
+            if(emptied) {
+                addVC(a, b, joined);
+                return;
+            }
+        }
+    }
+
+    private int add(int a, int b, long[] carrier, boolean isSemi) {
+        if(connectionCount == MAX_CONNECTIONS) return -1;
+        int connection = connectionCount++;
+        System.arraycopy(carrier, 0, carriers, connection * words, words);
+        first[connection] = a;
+        second[connection] = b;
+        semi[connection] = isSemi;
+        return connection;
+    }
+
+    private int count(int connection) {
+        int count = 0;
+        for(; connection >= 0; connection = nextOfPair[connection]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Checks if any connection of a list has a carrier inside the given carrier
+     */
+    private boolean containsSubset(int connection, long[] carrier) {
+        for(; connection >= 0; connection = nextOfPair[connection]) {
+            int base = connection * words;
+            boolean subset = true;
+            for(int w = 0; w < words && subset; w++) {
+                subset = (carriers[base + w] & ~carrier[w]) == 0;
+            }
+            if(subset) return true;
+        }
+        return false;
+    }
+}
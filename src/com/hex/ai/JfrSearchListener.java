@@ -0,0 +1,111 @@
+package com.hex.ai;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records every searched move as a com.hex.ai.Search event in Java Flight Recorder, so slow moves can be lined up with the GC and CPU events of the same
+ * recording. An event starts when the search does and holds the numbers of its SearchMetrics.
+ *
+ * JFR only exists in Java 11 and later and never on Android, so the event type is defined through jdk.jfr.EventFactory by reflection, and create() returns null
+ * where there is no JFR. One listener can be shared by any number of engines.
+ */
+public final class JfrSearchListener implements SearchListener {
+    // The fields of the event, in the order they are set
+    private static final String[] FIELDS = { "engine", "gridSize", "colour", "depth", "nodes", "nodesPerSecond", "evaluations", "tableHits", "tableMisses", "cutoffs", "buildTime", "relaxTime", "analyseTime", "sortTime", "solverNodes", "allocatedBytes" };
+
+    private final Object factory;
+    private final Method newEvent, isEnabled, begin, end, shouldCommit, set, commit;
+    // The event of the search running on each thread
+    private final ThreadLocal<Object> events = new ThreadLocal<Object>();
+
+    private JfrSearchListener() throws Exception {
+        Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+        Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+        Class<?> event = Class.forName("jdk.jfr.Event");
+        Constructor<?> annotation = annotationElement.getConstructor(Class.class, Object.class);
+        Constructor<?> field = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+
+        List<Object> annotations = new ArrayList<Object>();
+        annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Name"), "com.hex.ai.Search"));
+        annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Label"), "AI Search"));
+        annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Description"), "The search for one move of a Hex AI"));
+        annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Category"), new String[] { "Hex" }));
+        List<Object> nanoseconds = Collections.singletonList(annotation.newInstance(Class.forName("jdk.jfr.Timespan"), "NANOSECONDS"));
+        List<Object> bytes = Collections.singletonList(annotation.newInstance(Class.forName("jdk.jfr.DataAmount"), "BYTES"));
+        List<Object> none = Collections.emptyList();
+
+        List<Object> fields = new ArrayList<Object>();
+        for(String name : FIELDS) {
+            Class<?> type = name.equals("engine") || name.equals("cutoffs") ? String.class : name.equals("gridSize") || name.equals("colour") || name.equals("depth") ? int.class : long.class;
+            List<Object> annotationsOfField = name.endsWith("Time") ? nanoseconds : name.equals("allocatedBytes") ? bytes : none;
+            fields.add(field.newInstance(type, name, annotationsOfField));
+        }
+
+        factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+        newEvent = eventFactory.getMethod("newEvent");
+        isEnabled = event.getMethod("isEnabled");
+        begin = event.getMethod("begin");
+        end = event.getMethod("end");
+        shouldCommit = event.getMethod("shouldCommit");
+        set = event.getMethod("set", int.class, Object.class);
+        commit = event.getMethod("commit");
+    }
+
+    /**
+     * Creates a listener that records JFR events
+     *
+     * @return the listener, or null if this JVM has no JFR
+     */
+    public static JfrSearchListener create() {
+        try {
+            return new JfrSearchListener();
+        }
+        catch(Exception e) {
+            return null;
+        }
+        catch(LinkageError e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void searchStarted() {
+        try {
+            Object event = newEvent.invoke(factory);
+            if(!(Boolean) isEnabled.invoke(event)) {
+                events.remove();
+                return;
+            }
+            begin.invoke(event);
+            events.set(event);
+        }
+        catch(Exception e) {
+            events.remove();
+        }
+    }
+
+    @Override
+    public void searchFinished(SearchMetrics metrics) {
+        Object event = events.get();
+        if(event == null) return;
+        events.remove();
+        try {
+            end.invoke(event);
+            if(!(Boolean) shouldCommit.invoke(event)) return;
+            Object[] values = { metrics.getEngine(), metrics.getGridSize(), metrics.getColour(), metrics.getDepth(), metrics.getNodes(), metrics.getNodesPerSecond(), metrics.getEvaluations(), metrics.getTableHits(), metrics.getTableMisses(), Arrays.toString(metrics.getDepthCutoffs()), metrics.getBuildTime(), metrics.getRelaxTime(), metrics.getAnalyseTime(), metrics.getSortTime(), metrics.getSolverNodes(), metrics.getAllocatedBytes() };
+            for(int i = 0; i < values.length; i++) {
+                set.invoke(event, i, values[i]);
+            }
+            commit.invoke(event);
+        }
+        catch(Exception e) {
+            // A lost event is not worth failing the move for
+        }
+    }
+}
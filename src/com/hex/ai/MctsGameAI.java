@@ -0,0 +1,241 @@
+package com.hex.ai;
+
+import java.io.Serializable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hex.core.AI;
+import com.hex.core.Game;
+import com.hex.core.GameAction;
+import com.hex.core.Point;
+
+/**
+ * A Monte Carlo Tree Search player. Every thread runs its own playouts on its own board, and all of them grow the same tree, so more cores means more playouts
+ * for the same move.
+ */
+public class MctsGameAI extends AI implements Engine {
+    private final static boolean DEBUG = false;
+    private final static long serialVersionUID = 1L;
+    private final static int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    // The most nodes the tree may hold, whatever the budget
+    private final static int MAX_NODES = 1 << 20;
+
+    // The threads that run the playouts of every MCTS player
+    private static ForkJoinPool pool;
+
+    private final int gridSize, playouts, threads;
+
+    private transient MctsTree tree;
+    // The board of each thread
+    private transient PlayoutBoard[] boards;
+    // Told about every search, or null
+    private transient volatile SearchListener listener;
+    // The playouts of the last move, and the bytes allocated for it on other threads
+    private transient AtomicInteger playoutsRun;
+    private transient AtomicLong otherAllocated;
+
+    /**
+     * Constructor for the MctsGameAI object
+     *
+     * @param team
+     *            the team of the player
+     * @param gridSize
+     *            the size of the board
+     * @param playouts
+     *            the number of playouts for each move
+     */
+    public MctsGameAI(int team, int gridSize, int playouts) {
+        this(team, gridSize, playouts, DEFAULT_THREADS);
+    }
+
+    /**
+     * Constructor for the MctsGameAI object
+     *
+     * @param threads
+     *            the most threads to run playouts on
+     */
+    public MctsGameAI(int team, int gridSize, int playouts, int threads) {
+        super(team);
+        this.gridSize = gridSize;
+        this.playouts = playouts;
+        this.threads = Math.max(1, threads);
+        boards = new PlayoutBoard[this.threads];
+    }
+
+    /**
+     * Sets the listener told the metrics of every move, in which the nodes are the playouts
+     * 
+     * @param listener
+     *            the listener, or null for none
+     */
+    public void setSearchListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void getPlayerTurn(Game game) {
+        super.getPlayerTurn(game);
+        ScoredMove move = chooseMove(Position.of(game, team), Budget.DEFAULT);
+        if(move != null && !getSkipMove()) GameAction.makeMove(this, move.move, game);
+    }
+
+    /**
+     * Chooses a move by running playouts. A node budget is a number of playouts and the default budget is the player's own number of playouts. The score is
+     * the share of the playouts through the move that were won, in thousandths.
+     */
+    @Override
+    public ScoredMove chooseMove(Position position, Budget budget) {
+        byte[][] pieces = new byte[gridSize][gridSize];
+        for(int x = 0; x < gridSize; x++) {
+            for(int y = 0; y < gridSize; y++) {
+                pieces[x][y] = (byte) position.get(x, y);
+            }
+        }
+
+        int count = budget.isDefault() ? playouts : budget.getNodes() > 0 ? (int) Math.min(budget.getNodes(), Integer.MAX_VALUE) : Integer.MAX_VALUE;
+        long deadline = budget.getMillis() > 0 ? System.nanoTime() + budget.getMillis() * 1000000 : 0;
+        SearchListener listener = this.listener;
+        if(listener != null) listener.searchStarted();
+        long start = System.nanoTime();
+        long allocated = listener == null ? -1 : Allocations.currentThread();
+        int cell = getBestMove(pieces, position.getTeam(), count, deadline, listener != null);
+        if(listener != null) {
+            SearchMetrics metrics = new SearchMetrics(getName(), gridSize, position.getTeam(), 0);
+            metrics.nodes = playoutsRun.get();
+            metrics.evaluations = metrics.nodes;
+            metrics.time = System.nanoTime() - start;
+            long allocatedNow = allocated < 0 ? -1 : Allocations.currentThread();
+            metrics.allocatedBytes = allocatedNow < 0 ? -1 : allocatedNow - allocated + otherAllocated.get();
+            listener.searchFinished(metrics);
+        }
+        if(cell < 0) return null;
+        return new ScoredMove(new Point(cell / gridSize, cell % gridSize), (int) (tree.bestWinRate() * 1000));
+    }
+
+    /**
+     * Gets the best move on the board
+     *
+     * @param pieces
+     *            the team of the piece on each cell, indexed [x][y], 0 for empty
+     * @param colour
+     *            the colour to move
+     * @param playouts
+     *            the number of playouts to run
+     * @param deadline
+     *            the System.nanoTime() after which no more playouts are started, or 0 for none
+     * @param countAllocations
+     *            whether to count the bytes the other threads allocate
+     * @return the cell of the move, as x * gridSize + y, or -1 if there is none
+     */
+    private int getBestMove(byte[][] pieces, int colour, int playouts, long deadline, boolean countAllocations) {
+        long start = System.nanoTime();
+        int nodes = nodesFor(pieces, playouts);
+        if(tree == null || tree.capacity() < nodes) tree = new MctsTree(nodes);
+        tree.clear();
+        if(boards == null) boards = new PlayoutBoard[threads];
+        AtomicInteger remaining = new AtomicInteger(playouts);
+        playoutsRun = new AtomicInteger();
+        otherAllocated = new AtomicLong();
+        Thread owner = countAllocations ? Thread.currentThread() : null;
+        Playouts[] tasks = new Playouts[threads];
+        for(int i = 0; i < threads; i++) {
+            if(boards[i] == null) boards[i] = new PlayoutBoard(gridSize, System.nanoTime() * 31 + i);
+            boards[i].setPosition(pieces);
+            tasks[i] = new Playouts(boards[i], colour, remaining, deadline, owner);
+        }
+        for(int i = 1; i < threads; i++) {
+            getPool().execute(tasks[i]);
+        }
+        tasks[0].invoke();
+        for(int i = 1; i < threads; i++) {
+            tasks[i].join();
+        }
+
+        int best = tree.bestMove();
+        if(DEBUG) System.out.println("Move: " + best + ", win rate " + tree.bestWinRate() + ", " + playoutsRun.get() * 1000000000L / Math.max(1, System.nanoTime() - start) + " playouts/s" + (tree.isFull() ? ", tree full" : ""));
+        return best;
+    }
+
+    /**
+     * Returns the most nodes a number of playouts can add to the tree, up to MAX_NODES. A node is expanded by a playout that ends on it for the
+     * EXPAND_VISITS-th time, and that playout may end on one of the new children, so every EXPAND_VISITS - 1 playouts expand at most one node. Every
+     * expanded node adds a child for every cell that is empty at the root, or fewer.
+     */
+    private static int nodesFor(byte[][] pieces, int playouts) {
+        int empty = 0;
+        for(byte[] column : pieces) {
+            for(byte piece : column) {
+                if(piece == 0) empty++;
+            }
+        }
+        long nodes = ((long) playouts / (MctsTree.EXPAND_VISITS - 1) + 1) * empty + 1;
+        return (int) Math.min(nodes, MAX_NODES);
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if(pool == null) pool = new ForkJoinPool(DEFAULT_THREADS);
+        return pool;
+    }
+
+    /**
+     * Runs playouts on one thread until there are none left to run, the time has run out or the move is no longer needed
+     */
+    private class Playouts extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final PlayoutBoard board;
+        private final int colour;
+        private final AtomicInteger remaining;
+        private final long deadline;
+        // The thread that started the move, if allocations are counted
+        private final Thread owner;
+
+        Playouts(PlayoutBoard board, int colour, AtomicInteger remaining, long deadline, Thread owner) {
+            this.board = board;
+            this.colour = colour;
+            this.remaining = remaining;
+            this.deadline = deadline;
+            this.owner = owner;
+        }
+
+        @Override
+        protected void compute() {
+            long allocated = owner != null && owner != Thread.currentThread() ? Allocations.currentThread() : -1;
+            int[] path = new int[gridSize * gridSize];
+            int run = 0;
+            // A full tree stops the search: the playouts would no longer grow it
+            while(remaining.getAndDecrement() > 0 && !getSkipMove() && !tree.isFull() && (deadline == 0 || System.nanoTime() - deadline < 0)) {
+                board.reset();
+                tree.playout(board, colour, path);
+                run++;
+            }
+            playoutsRun.addAndGet(run);
+            if(allocated >= 0) otherAllocated.addAndGet(Allocations.currentThread() - allocated);
+        }
+    }
+
+    @Override
+    public Serializable getSaveState() {
+        return null;
+    }
+
+    @Override
+    public void setSaveState(Serializable state) {}
+
+    @Override
+    public String getAIType() {
+        return "MCTS";
+    }
+
+    @Override
+    public String getName() {
+        return "MCTS";
+    }
+
+    @Override
+    public void win() {}
+
+    @Override
+    public void lose(Game game) {}
+}
@@ -0,0 +1,189 @@
+package com.hex.ai;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A Monte Carlo search tree shared by every playout thread, without locks.
+ *
+ * Nodes live in flat arrays and are only ever added. The children of a node are allocated as one block by whichever thread wins the race to expand it, and are
+ * published by setting the node's state last. Visits are counted on the way down and wins on the way back up, so a playout that is still running counts as a
+ * loss for every node on its path. That virtual loss steers the other threads away from the path until the result is in.
+ */
+final class MctsTree {
+    // How many visits a node needs before it gets children
+    static final int EXPAND_VISITS = 4;
+    // The exploration constant of UCT
+    private static final double EXPLORATION = 0.5;
+
+    private static final int LEAF = 0, EXPANDING = 1, EXPANDED = 2;
+
+    private final int capacity;
+    private final AtomicInteger nodeCount = new AtomicInteger();
+    // Set once a node could not be expanded for want of room
+    private volatile boolean full;
+    // The cell played to reach each node
+    private final int[] moves;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final AtomicIntegerArray states;
+    private final AtomicIntegerArray visits;
+    // The playouts through each node won by the colour that played its move
+    private final AtomicIntegerArray wins;
+
+    /**
+     * Constructor for the MctsTree class
+     *
+     * @param capacity
+     *            the most nodes the tree will hold. Once a node would need more, the tree is full and grows no more.
+     */
+    MctsTree(int capacity) {
+        this.capacity = capacity;
+        moves = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        states = new AtomicIntegerArray(capacity);
+        visits = new AtomicIntegerArray(capacity);
+        wins = new AtomicIntegerArray(capacity);
+    }
+
+    /**
+     * Empties the tree down to a new root. Must not be called while searching.
+     */
+    void clear() {
+        int used = Math.min(nodeCount.get(), capacity);
+        for(int i = 0; i < used; i++) {
+            states.set(i, LEAF);
+            visits.set(i, 0);
+            wins.set(i, 0);
+        }
+        moves[0] = -1;
+        nodeCount.set(1);
+        full = false;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns true if a node has been left unexpanded because the tree had no room for its children. More playouts would then only refine the leaves.
+     */
+    boolean isFull() {
+        return full;
+    }
+
+    /**
+     * Runs one playout: walks down the tree by UCT, expands the node it stops at if it has been visited enough, plays the rest of the game out at random and
+     * records the result along the path.
+     *
+     * @param board
+     *            the board of this thread, reset to the root position
+     * @param colour
+     *            the colour to move at the root
+     * @param path
+     *            scratch space for the nodes visited, at least as long as the board has cells
+     */
+    void playout(PlayoutBoard board, int colour, int[] path) {
+        int rootColour = colour;
+        int node = 0;
+        int length = 0;
+        int winner = 0;
+        visits.incrementAndGet(0);
+        while(true) {
+            if(states.get(node) != EXPANDED) {
+                if(visits.get(node) >= EXPAND_VISITS && expand(node, board)) continue;
+                break;
+            }
+            if(childCount[node] == 0) break;
+            node = select(node);
+            visits.incrementAndGet(node);
+            path[length++] = node;
+            winner = board.play(moves[node], colour);
+            colour = colour == PlayoutBoard.RED ? PlayoutBoard.BLUE : PlayoutBoard.RED;
+            if(winner != 0) break;
+        }
+        if(winner == 0) winner = board.playout(colour);
+
+        // The first move on the path was played by the colour
+        // to move at the root, and the colours alternate from there.
+        int mover = rootColour;
+        for(int i = 0; i < length; i++) {
+            if(winner == mover) wins.incrementAndGet(path[i]);
+            mover = mover == PlayoutBoard.RED ? PlayoutBoard.BLUE : PlayoutBoard.RED;
+        }
+    }
+
+    /**
+     * Returns the cell of the most visited move from the root, or -1 if the root has no children
+     */
+    int bestMove() {
+        if(states.get(0) != EXPANDED) return -1;
+        int best = -1;
+        int bestVisits = -1;
+        for(int child = firstChild[0]; child < firstChild[0] + childCount[0]; child++) {
+            int v = visits.get(child);
+            if(v > bestVisits) {
+                bestVisits = v;
+                best = moves[child];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the share of the playouts through the most visited move from the root that the colour to move at the root won
+     */
+    double bestWinRate() {
+        if(states.get(0) != EXPANDED) return 0;
+        int best = -1;
+        for(int child = firstChild[0]; child < firstChild[0] + childCount[0]; child++) {
+            if(best < 0 || visits.get(child) > visits.get(best)) best = child;
+        }
+        return best < 0 || visits.get(best) == 0 ? 0 : (double) wins.get(best) / visits.get(best);
+    }
+
+    /**
+     * Gives a node one child for every empty cell. Only one thread gets to expand a node; the others carry on as if it were a leaf.
+     *
+     * @return true if the node was expanded
+     */
+    private boolean expand(int node, PlayoutBoard board) {
+        if(!states.compareAndSet(node, LEAF, EXPANDING)) return false;
+        int count = board.emptyCount();
+        int first;
+        do {
+            first = nodeCount.get();
+
+            // A full tree stays as it is, and the node stays a leaf for good
+            if(first + count > capacity) {
+                full = true;
+                return false;
+            }
+        } while(!nodeCount.compareAndSet(first, first + count));
+        board.emptyCells(moves, first);
+        firstChild[node] = first;
+        childCount[node] = count;
+        states.set(node, EXPANDED);
+        return true;
+    }
+
+    /**
+     * Picks the child of a node with the best upper confidence bound. A child that has never been visited comes first.
+     */
+    private int select(int node) {
+        double logVisits = Math.log(Math.max(1, visits.get(node)));
+        int best = -1;
+        double bestScore = -1;
+        for(int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+            int v = visits.get(child);
+            if(v == 0) return child;
+            double score = (double) wins.get(child) / v + EXPLORATION * Math.sqrt(logVisits / v);
+            if(score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,200 @@
+package com.hex.ai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A book of opening moves, read straight out of a memory-mapped file.
+ *
+ * The file starts with a header: the magic number, the version and the number of sections, followed by one directory entry per section holding the board
+ * size, whether the swap rule is on (0 or 1), the offset of the section and its number of entries. A section is an array of entries sorted by key, each one
+ * the canonical key of a position with the player to move, the cell of the book move on Bee's padded board in the canonical orientation and the value the
+ * search gave it, so one entry serves a position and its symmetric twins. A book move onto the other player's only piece is a swap. Everything is big-endian.
+ *
+ * Positions are found by a binary search of the mapped file, so opening a book costs nothing but the mapping and the pages a lookup touches are the only
+ * ones that get read. The keys are those of CanonicalHash, which are the same in every run, so a book stays valid as long as they do not change.
+ *
+ * Books are built offline with OpeningBookBuilder.
+ */
+public final class OpeningBook {
+    static final int MAGIC = 0x48455842;
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 12;
+    static final int SECTION_BYTES = 20;
+    static final int ENTRY_BYTES = 16;
+    private final static int RED = 1, BLUE = 2;
+
+    // The book the AIs use unless they are given another
+    private static OpeningBook defaultBook;
+
+    private final MappedByteBuffer buffer;
+    private final int sections;
+
+    private OpeningBook(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if(buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) throw new IOException("Not an opening book");
+        if(buffer.getInt(4) != VERSION) throw new IOException("Unsupported opening book version " + buffer.getInt(4));
+        sections = buffer.getInt(8);
+        if(sections < 0 || HEADER_BYTES + (long) sections * SECTION_BYTES > buffer.capacity()) throw new IOException("Truncated opening book");
+        for(int i = 0; i < sections; i++) {
+            int index = HEADER_BYTES + i * SECTION_BYTES;
+            if(buffer.getLong(index + 8) + (long) buffer.getInt(index + 16) * ENTRY_BYTES > buffer.capacity()) throw new IOException("Truncated opening book");
+        }
+    }
+
+    /**
+     * Maps a book file into memory. Nothing but the header is read until the book is used.
+     *
+     * @param file
+     *            the book, at most 2GB
+     */
+    public static OpeningBook open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            // The mapping stays valid after the file is closed
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns the book every new AI consults, or null if there is none
+     */
+    public static synchronized OpeningBook getDefault() {
+        return defaultBook;
+    }
+
+    /**
+     * Sets the book every AI created from now on consults. Best called once, at startup.
+     *
+     * @param book
+     *            the book, or null for none
+     */
+    public static synchronized void setDefault(OpeningBook book) {
+        defaultBook = book;
+    }
+
+    /**
+     * Looks up the book move of a position
+     *
+     * @param board
+     *            the board
+     * @param colour
+     *            the colour to move
+     * @param swap
+     *            whether the game is played with the swap rule
+     * @return the cell of the move, or -1 if the book has no move that can be played there
+     */
+    int lookup(BitBoard board, int colour, boolean swap) {
+        long entry = entry(board, colour, swap);
+        return entry < 0 ? -1 : (int) entry;
+    }
+
+    /**
+     * Looks up the book move of a position
+     *
+     * @return the move and the value the search gave it, or null if the book has none
+     */
+    public ScoredMove lookup(Position position) {
+        BitBoard board = position.toBitBoard();
+        long entry = entry(board, position.getTeam(), position.isSwap());
+        if(entry < 0) return null;
+        return new ScoredMove(position.fromBitBoard((int) entry), buffer.getInt((int) (entry >>> 32) + 12));
+    }
+
+    /**
+     * Finds the entry of a position, if its move can be played
+     *
+     * @return the offset of the entry and the cell of its move on the board as it is, as (offset << 32 | cell), or -1
+     */
+    private long entry(BitBoard board, int colour, boolean swap) {
+        int width = board.width();
+        CanonicalHash hash = new CanonicalHash(width - 2);
+        hash.set(board, colour);
+        int transform = transform(hash, board, swap);
+        long entry = find(width - 2, swap, hash.key(transform));
+        if(entry < 0) return -1;
+        int cell = buffer.getInt((int) entry + 8);
+
+        // Checks the move can be played, in case of a damaged book
+        if(cell < 0 || cell >= board.cells()) return -1;
+        cell = hash.cell(cell, transform);
+        int row = cell / width;
+        int column = cell % width;
+        if(row < 1 || row > width - 2 || column < 1 || column > width - 2) return -1;
+        if(board.isEmpty(cell)) return entry << 32 | cell;
+        int other = colour == RED ? BLUE : RED;
+        if(swap && board.get(cell) == other && interiorPieces(board) == 1) return entry << 32 | cell;
+        return -1;
+    }
+
+    /**
+     * Checks if the book has any positions for a board size
+     */
+    public boolean covers(int gridSize, boolean swap) {
+        return section(gridSize, swap) >= 0;
+    }
+
+    /**
+     * Returns the transform that puts a position of the book in its canonical orientation. With the swap rule, a position with one piece is only turned, since
+     * its reflection, with the colours swapped, could not swap.
+     *
+     * @param hash
+     *            the keys of the position
+     */
+    static int transform(CanonicalHash hash, BitBoard board, boolean swap) {
+        return hash.transform(swap && interiorPieces(board) == 1 ? CanonicalHash.ROTATIONS : CanonicalHash.ALL);
+    }
+
+    /**
+     * Finds a position by a binary search of its section
+     *
+     * @return the offset of its entry, or -1 if it is not in the book
+     */
+    private long find(int gridSize, boolean swap, long key) {
+        int section = section(gridSize, swap);
+        if(section < 0) return -1;
+        long offset = buffer.getLong(section + 8);
+        int low = 0;
+        int high = buffer.getInt(section + 16) - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            long entry = offset + (long) middle * ENTRY_BYTES;
+            long entryKey = buffer.getLong((int) entry);
+            if(entryKey < key) low = middle + 1;
+            else if(entryKey > key) high = middle - 1;
+            else return entry;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the directory entry of a section, or -1 if there is none
+     */
+    private int section(int gridSize, boolean swap) {
+        for(int i = 0; i < sections; i++) {
+            int index = HEADER_BYTES + i * SECTION_BYTES;
+            if(buffer.getInt(index) == gridSize && buffer.getInt(index + 4) == (swap ? 1 : 0)) return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the pieces on a board, less the border
+     */
+    private static int interiorPieces(BitBoard board) {
+        int count = -4 * (board.width() - 2);
+        for(int colour = RED; colour <= BLUE; colour++) {
+            for(long word : board.pieces(colour)) {
+                count += Long.bitCount(word);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,289 @@
+package com.hex.ai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Builds opening books by searching every position of the opening with Bee, far deeper than Bee could afford during a game.
+ *
+ * A book is built from both sides. For the colour the book plays, a position gets the move the search likes best and only that move is followed. For the
+ * other colour every move is followed, so the book has an answer whatever the opponent does. With the swap rule, the second player's first move may be a
+ * swap, which is taken if the position after it is worth more than the best normal move, and the first player's first move is the one whose best answer,
+ * swap or not, is worth the least.
+ *
+ * Usage: OpeningBookBuilder file depth beamSize plies gridSize...
+ */
+public final class OpeningBookBuilder {
+    private final static int RED = 1, BLUE = 2;
+
+    private final int gridSize;
+    private final boolean swap;
+    // The searchers for each colour, indexed by colour
+    private final BeeGameAI[] players;
+    // The book moves found so far, as (value << 32 | cell) by the canonical key of their position, with the cell in the canonical orientation
+    private final HashMap<Long, Long> moves = new HashMap<Long, Long>();
+
+    /**
+     * Constructor for the OpeningBookBuilder class
+     *
+     * @param gridSize
+     *            the size of the board
+     * @param swap
+     *            whether the book is for games with the swap rule
+     * @param depth
+     *            the depth to search every position to
+     * @param beamSize
+     *            the number of moves tried at each depth
+     */
+    public OpeningBookBuilder(int gridSize, boolean swap, int depth, int beamSize) {
+        this.gridSize = gridSize;
+        this.swap = swap;
+        players = new BeeGameAI[3];
+        players[RED] = new BeeGameAI(RED, gridSize, depth, beamSize);
+        players[BLUE] = new BeeGameAI(BLUE, gridSize, depth, beamSize);
+        players[RED].setOpeningBook(null);
+        players[BLUE].setOpeningBook(null);
+    }
+
+    /**
+     * Searches the positions of the first moves of the game
+     *
+     * @param plies
+     *            the number of moves from the start of the game the book covers
+     */
+    public void build(int plies) {
+        BitBoard board = new BitBoard(gridSize);
+        expand(board, RED, plies, RED);
+        expand(board, RED, plies, BLUE);
+    }
+
+    /**
+     * Returns the number of positions found so far
+     */
+    public int size() {
+        return moves.size();
+    }
+
+    /**
+     * Follows the opening from a position, adding the book moves of bookColour
+     *
+     * @param board
+     *            the position, which is the same again when this returns
+     * @param colour
+     *            the colour to move
+     * @param plies
+     *            the number of moves left to follow
+     * @param bookColour
+     *            the colour the book plays
+     */
+    private void expand(BitBoard board, int colour, int plies, int bookColour) {
+        if(plies == 0 || board.isConnected(RED) || board.isConnected(BLUE)) return;
+        int other = colour == RED ? BLUE : RED;
+        if(colour == bookColour) {
+            int cell = (int) bookMove(board, colour);
+            if(cell < 0) return;
+            int previous = board.get(cell);
+            board.set(cell, colour);
+            expand(board, other, plies - 1, bookColour);
+            board.set(cell, previous);
+            return;
+        }
+
+        long[] empty = new long[board.words()];
+        board.emptyInterior(empty);
+        for(int cell = BitBoard.next(empty, 0); cell >= 0; cell = BitBoard.next(empty, cell + 1)) {
+            board.set(cell, colour);
+            expand(board, other, plies - 1, bookColour);
+            board.set(cell, 0);
+        }
+
+        // The opponent may also swap
+        int swapCell = swapCell(board, colour);
+        if(swapCell >= 0) {
+            board.set(swapCell, colour);
+            expand(board, other, plies - 1, bookColour);
+            board.set(swapCell, other);
+        }
+    }
+
+    /**
+     * Returns the book move of a position, searching for it if it has not been found yet
+     *
+     * @return the move, as (value << 32 | cell), with a cell of -1 if there is none
+     */
+    private long bookMove(BitBoard board, int colour) {
+        CanonicalHash hash = new CanonicalHash(gridSize);
+        hash.set(board, colour);
+        int transform = OpeningBook.transform(hash, board, swap);
+        long key = hash.key(transform);
+        Long move = moves.get(key);
+        if(move != null) return turn(move, hash, transform);
+
+        int swapCell = swapCell(board, colour);
+        if(swap && colour == RED && isEmpty(board)) {
+            move = firstMove(board);
+        }
+        else if(swapCell >= 0) {
+            move = swapDecision(board, swapCell);
+        }
+        else {
+            int cell = players[colour].searchPosition(board);
+            move = (long) players[colour].getValue() << 32 | cell & 0xFFFFFFFFL;
+        }
+        moves.put(key, turn(move, hash, transform));
+        return move;
+    }
+
+    /**
+     * Maps the cell of a book move through a transform, which maps it into the canonical orientation and back
+     */
+    private static long turn(long move, CanonicalHash hash, int transform) {
+        int cell = (int) move;
+        if(cell < 0) return move;
+        return move & 0xFFFFFFFF00000000L | hash.cell(cell, transform) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Finds the first move of a game with the swap rule: the move whose best answer is worth the least to the opponent
+     */
+    private long firstMove(BitBoard board) {
+        long[] empty = new long[board.words()];
+        board.emptyInterior(empty);
+        long best = (long) -BeeSearch.INFINITY << 32 | 0xFFFFFFFFL;
+        for(int cell = BitBoard.next(empty, 0); cell >= 0; cell = BitBoard.next(empty, cell + 1)) {
+            board.set(cell, RED);
+            int value = -(int) (bookMove(board, BLUE) >> 32);
+            board.set(cell, 0);
+            if(value > (int) (best >> 32)) best = (long) value << 32 | cell;
+        }
+        return best;
+    }
+
+    /**
+     * Decides whether the second player swaps: it does if the position after the swap, with the first player to move, is worth more than its best normal
+     * move
+     */
+    private long swapDecision(BitBoard board, int swapCell) {
+        int cell = players[BLUE].searchPosition(board);
+        int value = players[BLUE].getValue();
+
+        board.set(swapCell, BLUE);
+        players[RED].searchPosition(board);
+        int swapValue = -players[RED].getValue();
+        board.set(swapCell, RED);
+
+        if(cell < 0 || swapValue > value) return (long) swapValue << 32 | swapCell;
+        return (long) value << 32 | cell;
+    }
+
+    /**
+     * Returns the cell the colour to move may swap onto, or -1 if it can not swap
+     */
+    private int swapCell(BitBoard board, int colour) {
+        if(!swap || colour != BLUE) return -1;
+        BitBoard empty = new BitBoard(gridSize);
+        int swapCell = -1;
+        for(int cell = 0; cell < board.cells(); cell++) {
+            if(board.get(cell) == empty.get(cell)) continue;
+            if(swapCell >= 0 || board.get(cell) != RED) return -1;
+            swapCell = cell;
+        }
+        return swapCell;
+    }
+
+    /**
+     * Checks if the board holds nothing but its border
+     */
+    private boolean isEmpty(BitBoard board) {
+        BitBoard empty = new BitBoard(gridSize);
+        return Arrays.equals(board.pieces(RED), empty.pieces(RED)) && Arrays.equals(board.pieces(BLUE), empty.pieces(BLUE));
+    }
+
+    /**
+     * Returns the positions found so far as book entries, sorted by key, three longs per entry: the key, the cell and the value
+     */
+    private long[] entries() {
+        long[] keys = new long[moves.size()];
+        int i = 0;
+        for(Long key : moves.keySet()) {
+            keys[i++] = key;
+        }
+        Arrays.sort(keys);
+        long[] entries = new long[keys.length * 3];
+        for(i = 0; i < keys.length; i++) {
+            long move = moves.get(keys[i]);
+            entries[i * 3] = keys[i];
+            entries[i * 3 + 1] = (int) move;
+            entries[i * 3 + 2] = (int) (move >> 32);
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the books of several builders to one file
+     *
+     * @param file
+     *            the file to write
+     * @param builders
+     *            the builders, at most one for each board size and swap rule
+     */
+    public static void write(File file, List<OpeningBookBuilder> builders) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeInt(builders.size());
+
+            List<long[]> sections = new ArrayList<long[]>();
+            long offset = OpeningBook.HEADER_BYTES + builders.size() * OpeningBook.SECTION_BYTES;
+            for(OpeningBookBuilder builder : builders) {
+                long[] entries = builder.entries();
+                sections.add(entries);
+                out.writeInt(builder.gridSize);
+                out.writeInt(builder.swap ? 1 : 0);
+                out.writeLong(offset);
+                out.writeInt(entries.length / 3);
+                offset += entries.length / 3 * OpeningBook.ENTRY_BYTES;
+            }
+            for(long[] entries : sections) {
+                for(int i = 0; i < entries.length; i += 3) {
+                    out.writeLong(entries[i]);
+                    out.writeInt((int) entries[i + 1]);
+                    out.writeInt((int) entries[i + 2]);
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 5) {
+            System.err.println("Usage: OpeningBookBuilder file depth beamSize plies gridSize...");
+            System.exit(1);
+        }
+        int depth = Integer.parseInt(args[1]);
+        int beamSize = Integer.parseInt(args[2]);
+        int plies = Integer.parseInt(args[3]);
+        List<OpeningBookBuilder> builders = new ArrayList<OpeningBookBuilder>();
+        for(int i = 4; i < args.length; i++) {
+            int gridSize = Integer.parseInt(args[i]);
+            for(boolean swap : new boolean[] { false, true }) {
+                long start = System.currentTimeMillis();
+                OpeningBookBuilder builder = new OpeningBookBuilder(gridSize, swap, depth, beamSize);
+                builder.build(plies);
+                builders.add(builder);
+                System.out.println(gridSize + "x" + gridSize + (swap ? " with swap" : "") + ": " + builder.size() + " positions in " + (System.currentTimeMillis() - start) + "ms");
+            }
+        }
+        write(new File(args[0]), builders);
+    }
+}
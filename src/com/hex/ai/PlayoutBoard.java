@@ -0,0 +1,165 @@
+package com.hex.ai;
+
+/**
+ * A compact Hex board for random playouts, in the game's own coordinates: cell x * size + y, RED joining x = 0 to x = size - 1 and BLUE joining y = 0 to y =
+ * size - 1.
+ *
+ * Who has won is tracked by a WinDetector, so a playout fills the empty cells in random order and stops at the first winning move, except that a move into a
+ * bridge is always answered by the other cell of the bridge.
+ */
+final class PlayoutBoard {
+    static final int RED = 1, BLUE = 2;
+
+    private final int size;
+    private final int cells;
+    private final int[] neighbours;
+
+    // The position to play out from
+    private final WinDetector start;
+    private final int[] startEmpty;
+    private int startEmptyCount;
+
+    // The position being played out
+    private final WinDetector board;
+    // The empty cells, and the index of every empty cell in that list
+    private final int[] empty;
+    private final int[] emptyIndex;
+    private int emptyCount;
+
+    private long seed;
+
+    /**
+     * Constructor for the PlayoutBoard class
+     *
+     * @param size
+     *            the size of the board
+     * @param seed
+     *            the seed of the random moves, anything but 0
+     */
+    PlayoutBoard(int size, long seed) {
+        this.size = size;
+        this.cells = size * size;
+        this.seed = seed == 0 ? 1 : seed;
+        start = new WinDetector(size);
+        board = new WinDetector(size);
+        neighbours = board.neighbours();
+        startEmpty = new int[cells];
+        empty = new int[cells];
+        emptyIndex = new int[cells];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Sets the position every playout starts from
+     *
+     * @param pieces
+     *            the team of the piece on each cell, indexed [x][y], 0 for empty
+     */
+    void setPosition(byte[][] pieces) {
+        start.clear();
+        startEmptyCount = 0;
+        for(int x = 0; x < size; x++) {
+            for(int y = 0; y < size; y++) {
+                if(pieces[x][y] != 0) start.place(x * size + y, pieces[x][y]);
+                else startEmpty[startEmptyCount++] = x * size + y;
+            }
+        }
+        reset();
+    }
+
+    /**
+     * Goes back to the position set by setPosition()
+     */
+    void reset() {
+        board.copyFrom(start);
+        System.arraycopy(startEmpty, 0, empty, 0, startEmptyCount);
+        emptyCount = startEmptyCount;
+        for(int i = 0; i < emptyCount; i++) {
+            emptyIndex[empty[i]] = i;
+        }
+    }
+
+    /**
+     * Returns the number of empty cells
+     */
+    int emptyCount() {
+        return emptyCount;
+    }
+
+    /**
+     * Copies the empty cells into an array
+     */
+    void emptyCells(int[] out, int offset) {
+        System.arraycopy(empty, 0, out, offset, emptyCount);
+    }
+
+    /**
+     * Puts a piece on an empty cell
+     *
+     * @return the colour if the piece connected its two edges, otherwise 0
+     */
+    int play(int cell, int colour) {
+        board.place(cell, colour);
+
+        // Takes the cell out of the empty list by moving the last empty cell into its place
+        int index = emptyIndex[cell];
+        int last = empty[--emptyCount];
+        empty[index] = last;
+        emptyIndex[last] = index;
+
+        return board.hasWon(colour) ? colour : 0;
+    }
+
+    /**
+     * Fills the board with random moves until one colour connects its edges
+     *
+     * @param colour
+     *            the colour to move first
+     * @return the winning colour
+     */
+    int playout(int colour) {
+        int last = -1;
+        while(emptyCount > 0) {
+            int cell = last < 0 ? -1 : bridgeReply(last, colour);
+            if(cell < 0) cell = empty[nextInt(emptyCount)];
+            if(play(cell, colour) != 0) return colour;
+            colour = colour == RED ? BLUE : RED;
+            last = cell;
+        }
+        // Only reached if the position was already full
+        return board.hasWon(RED) ? RED : BLUE;
+    }
+
+    /**
+     * Finds the cell that saves a bridge of the given colour the last move went into
+     *
+     * @param move
+     *            the last move, by the other colour
+     * @return the other cell of the bridge, or -1 if the move broke into no bridge
+     */
+    private int bridgeReply(int move, int colour) {
+        // Two pieces two steps apart round the move form a bridge
+        // with the move and the cell between them round the move.
+        int base = move * 6;
+        for(int i = 0; i < 6; i++) {
+            int first = neighbours[base + i];
+            int between = neighbours[base + (i + 1) % 6];
+            int second = neighbours[base + (i + 2) % 6];
+            if(first >= 0 && between >= 0 && second >= 0 && board.team(first) == colour && board.team(second) == colour && board.team(between) == 0) return between;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a random number from 0 to bound - 1, using xorshift
+     */
+    private int nextInt(int bound) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) ((seed >>> 33) * bound >>> 31);
+    }
+}
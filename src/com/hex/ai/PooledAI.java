@@ -0,0 +1,103 @@
+package com.hex.ai;
+
+import java.io.Serializable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.hex.core.AI;
+import com.hex.core.Game;
+import com.hex.core.GameAction;
+
+/**
+ * A Bee player whose moves are searched by an EnginePool. It keeps no board of its own, so undo, saving and new games need nothing from it.
+ */
+final class PooledAI extends AI {
+    private final static long serialVersionUID = 1L;
+
+    private final transient EnginePool pool;
+    private final int gridSize, difficulty;
+    // The move being searched for, if any
+    private transient volatile Future<ScoredMove> pending;
+
+    PooledAI(EnginePool pool, int team, int gridSize, int difficulty) {
+        super(team);
+        this.pool = pool;
+        this.gridSize = gridSize;
+        this.difficulty = difficulty;
+    }
+
+    @Override
+    public void getPlayerTurn(Game game) {
+        super.getPlayerTurn(game);
+        if(game.gameOptions.gridSize != gridSize) throw new IllegalArgumentException("Expected a board of size " + gridSize);
+        try {
+            pending = pool.submit(this, Position.of(game, team), difficulty, Budget.DEFAULT);
+            ScoredMove move = pending.get();
+            if(move != null && !getSkipMove()) GameAction.makeMove(this, move.move, game);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        catch(CancellationException e) {
+            // The game ended or was left while Bee was thinking
+        }
+        finally {
+            stop();
+        }
+    }
+
+    /**
+     * Gives up the move being searched for
+     */
+    private void stop() {
+        Future<ScoredMove> pending = this.pending;
+        this.pending = null;
+        if(pending != null) pending.cancel(true);
+    }
+
+    @Override
+    public void endMove() {
+        super.endMove();
+        stop();
+    }
+
+    @Override
+    public void quit() {
+        super.quit();
+        stop();
+    }
+
+    @Override
+    public void newgameCalled() {
+        super.newgameCalled();
+        stop();
+    }
+
+    @Override
+    public Serializable getSaveState() {
+        return null;
+    }
+
+    @Override
+    public void setSaveState(Serializable state) {}
+
+    @Override
+    public String getAIType() {
+        return "Bee";
+    }
+
+    @Override
+    public String getName() {
+        return "Bee";
+    }
+
+    @Override
+    public void win() {}
+
+    @Override
+    public void lose(Game game) {}
+}
@@ -0,0 +1,169 @@
+package com.hex.ai;
+
+import com.hex.core.Game;
+import com.hex.core.Move;
+import com.hex.core.Point;
+
+/**
+ * An immutable Hex position in the game's own coordinates: the pieces, the team to move, the move number and whether the swap rule is on. Team 1 joins x = 0 to
+ * x = gridSize - 1 and team 2 joins y = 0 to y = gridSize - 1.
+ *
+ * A position can be taken from a running Game, or built up from an empty board with play(), which is how self-play and analysis drive an Engine without one.
+ */
+public final class Position {
+    private final int gridSize;
+    // The team of the piece on each cell, indexed x * gridSize + y, 0 for empty
+    private final byte[] pieces;
+    private final int team;
+    private final int moveNumber;
+    private final boolean swap;
+    private final int lastMove;
+
+    private Position(int gridSize, byte[] pieces, int team, int moveNumber, boolean swap, int lastMove) {
+        this.gridSize = gridSize;
+        this.pieces = pieces;
+        this.team = team;
+        this.moveNumber = moveNumber;
+        this.swap = swap;
+        this.lastMove = lastMove;
+    }
+
+    /**
+     * Creates the empty position at the start of a game, with team 1 to move
+     *
+     * @param gridSize
+     *            the size of the board
+     * @param swap
+     *            whether the second move may take the first piece
+     */
+    public Position(int gridSize, boolean swap) {
+        this(gridSize, new byte[gridSize * gridSize], 1, 1, swap, -1);
+    }
+
+    /**
+     * Returns the position of a game, with the player whose turn it is to move
+     */
+    public static Position of(Game game) {
+        return of(game, game.getCurrentPlayer().getTeam());
+    }
+
+    /**
+     * Returns the position of a game, with the given team to move
+     */
+    public static Position of(Game game, int team) {
+        int gridSize = game.gameOptions.gridSize;
+        byte[] pieces = new byte[gridSize * gridSize];
+        for(int x = 0; x < gridSize; x++) {
+            for(int y = 0; y < gridSize; y++) {
+                pieces[x * gridSize + y] = game.gamePieces[x][y].getTeam();
+            }
+        }
+        Move move = game.getMoveList().getMove();
+        int lastMove = move == null ? -1 : move.getX() * gridSize + move.getY();
+        return new Position(gridSize, pieces, team, game.getMoveNumber(), game.gameOptions.swap, lastMove);
+    }
+
+    /**
+     * Returns the position after the team to move plays a move
+     *
+     * @throws IllegalArgumentException
+     *             if the move can not be played
+     */
+    public Position play(int x, int y) {
+        if(!isLegal(x, y)) throw new IllegalArgumentException("Illegal move " + x + "," + y);
+        byte[] next = pieces.clone();
+        next[x * gridSize + y] = (byte) team;
+        return new Position(gridSize, next, team == 1 ? 2 : 1, moveNumber + 1, swap, x * gridSize + y);
+    }
+
+    public Position play(Point move) {
+        return play(move.x, move.y);
+    }
+
+    /**
+     * Checks if the team to move may play a move: on an empty cell, or on the first piece as the second move if the swap rule is on
+     */
+    public boolean isLegal(int x, int y) {
+        if(x < 0 || y < 0 || x >= gridSize || y >= gridSize) return false;
+        int piece = pieces[x * gridSize + y];
+        return piece == 0 || swap && moveNumber == 2 && piece != team;
+    }
+
+    /**
+     * Returns the team of the piece on a cell, or 0 if it is empty
+     */
+    public int get(int x, int y) {
+        return pieces[x * gridSize + y];
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    /**
+     * Returns the team to move
+     */
+    public int getTeam() {
+        return team;
+    }
+
+    /**
+     * Returns the number of the move to be made, starting at 1 for the first move of the game
+     */
+    public int getMoveNumber() {
+        return moveNumber;
+    }
+
+    public boolean isSwap() {
+        return swap;
+    }
+
+    /**
+     * Returns the last move, or null at the start of the game
+     */
+    public Point getLastMove() {
+        return lastMove < 0 ? null : new Point(lastMove / gridSize, lastMove % gridSize);
+    }
+
+    /**
+     * Returns the team that has joined its sides, or 0 if neither has
+     */
+    public int getWinner() {
+        WinDetector detector = new WinDetector(gridSize);
+        for(int x = 0; x < gridSize; x++) {
+            for(int y = 0; y < gridSize; y++) {
+                if(pieces[x * gridSize + y] != 0) detector.play(x, y, pieces[x * gridSize + y]);
+            }
+        }
+        return detector.getWinner();
+    }
+
+    /**
+     * Returns the position as a Bee board. Game (x, y) is Bee's row gridSize - y and column x + 1.
+     */
+    BitBoard toBitBoard() {
+        BitBoard board = new BitBoard(gridSize);
+        for(int x = 0; x < gridSize; x++) {
+            for(int y = 0; y < gridSize; y++) {
+                int piece = pieces[x * gridSize + y];
+                if(piece != 0) board.set(gridSize - y, x + 1, piece);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Returns the cell of a Bee board of this size at game coordinates
+     */
+    int toBitBoard(Point point) {
+        return (gridSize - point.y) * (gridSize + 2) + point.x + 1;
+    }
+
+    /**
+     * Returns the game coordinates of a cell of a Bee board of this size
+     */
+    Point fromBitBoard(int cell) {
+        int width = gridSize + 2;
+        return new Point(cell % width - 1, gridSize - cell / width);
+    }
+}
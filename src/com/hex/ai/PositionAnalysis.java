@@ -0,0 +1,123 @@
+package com.hex.ai;
+
+import java.util.Arrays;
+
+/**
+ * Everything Bee reads off the two-distance arrays of one position: the moves ranked by the sum of their two-distances, and the potential and mobility of each
+ * colour that make up the evaluation.
+ *
+ * All of it comes from a single pass over the empty cells. The moves are only sorted the first time they are asked for, so a position that is just evaluated
+ * never pays for the sort.
+ */
+final class PositionAnalysis {
+    private long key;
+    private boolean valid;
+
+    // The moves as (move value << 32 | cell), sorted once sorted is set
+    private final long[] moves;
+    private int count;
+    private boolean sorted;
+
+    private int redPotential;
+    private int bluePotential;
+    private int redMobility;
+    private int blueMobility;
+
+    /**
+     * Constructor for the PositionAnalysis class
+     *
+     * @param cells
+     *            the number of cells of the padded board
+     */
+    PositionAnalysis(int cells) {
+        moves = new long[cells];
+    }
+
+    /**
+     * Checks if this is the analysis of a position
+     *
+     * @param key
+     *            the Zobrist key of the position
+     */
+    boolean isFor(long key) {
+        return valid && this.key == key;
+    }
+
+    /**
+     * Analyses a position, replacing the previous analysis
+     *
+     * @param key
+     *            the Zobrist key of the position
+     * @param board
+     *            the board of the position
+     * @param distances
+     *            the two-distance arrays of the position
+     * @param emptyCells
+     *            scratch space for the empty cells of the board
+     */
+    void analyse(long key, BitBoard board, TwoDistance distances, long[] emptyCells) {
+        this.key = key;
+        valid = true;
+        sorted = false;
+        count = 0;
+
+        // The potential of a board for a
+        // particular colour is the smallest
+        // two-distance value that occurs on
+        // the sum of the boards corresponding to that colour.
+        // The mobility of a board for a
+        // particular colour is how many times
+        // the smallest two-distance value occurs on
+        // the sum of the boards corresponding to that colour.
+        redPotential = 100000;
+        bluePotential = 100000;
+        redMobility = 0;
+        blueMobility = 0;
+        board.emptyInterior(emptyCells);
+        for(int cell = BitBoard.next(emptyCells, 0); cell >= 0; cell = BitBoard.next(emptyCells, cell + 1)) {
+            int red = distances.get(TwoDistance.RED_A, cell) + distances.get(TwoDistance.RED_B, cell);
+            int blue = distances.get(TwoDistance.BLUE_A, cell) + distances.get(TwoDistance.BLUE_B, cell);
+            if(red < redPotential) {
+                redPotential = red;
+                redMobility = 1;
+            }
+            else if(red == redPotential) redMobility++;
+            if(blue < bluePotential) {
+                bluePotential = blue;
+                blueMobility = 1;
+            }
+            else if(blue == bluePotential) blueMobility++;
+
+            // The move value is the sum of all four two-distances
+            moves[count++] = (long) (red + blue) << 32 | cell;
+        }
+    }
+
+    /**
+     * Copies the best moves, from best to worst
+     *
+     * @param out
+     *            the array to fill, with each move as (move value << 32 | cell)
+     * @param limit
+     *            the most moves to copy
+     * @return the number of moves copied
+     */
+    int moves(long[] out, int limit) {
+        // Sorts the moves in order from best to worst.
+        // Moves of the same value stay in board order.
+        if(!sorted) {
+            Arrays.sort(moves, 0, count);
+            sorted = true;
+        }
+        int copied = Math.min(limit, count);
+        System.arraycopy(moves, 0, out, 0, copied);
+        return copied;
+    }
+
+    /**
+     * Returns the value of the position for RED
+     */
+    int value() {
+        return 100 * (bluePotential - redPotential) - (blueMobility - redMobility);
+    }
+}
@@ -0,0 +1,303 @@
+package com.hex.ai;
+
+import java.util.HashSet;
+
+/**
+ * Solves late positions exactly with depth-first proof-number search (df-pn).
+ *
+ * Every position has a proof number, the least number of positions that still have to be solved to prove the player to move wins, and a disproof number, the
+ * same to prove they lose. A position is proven when its proof number is 0 and disproven when its disproof number is 0. The proof number of a position is the
+ * smallest disproof number of its children and its disproof number the sum of their proof numbers, since the player to move needs one winning move but the
+ * opponent has to answer all of them. The search always expands the child with the smallest disproof number, and only leaves it once its numbers pass the
+ * thresholds at which another child would be better, so it needs no more memory than the table.
+ *
+ * Hex has no draws and pieces are never taken back, so every position is won by one player and the positions form a tree without cycles. A move that connects
+ * the player's sides proves its position at once, without being expanded.
+ *
+ * The numbers are kept in a direct-mapped table keyed by Zobrist keys, and the search gives up once it has expanded its node budget.
+ */
+final class ProofSolver {
+    // The result of a solve()
+    static final int WIN = 1, LOSS = -1, UNKNOWN = 0;
+    private static final int INFINITY = 100000000;
+    private static final int TABLE_SIZE = 1 << 18;
+    private final static int RED = 1, BLUE = 2;
+
+    private final BeeGameAI ai;
+    private final Zobrist zobrist;
+    private final BitBoard board;
+    private final Chains chains;
+    // The Zobrist key of the board and the player to move
+    private long hash;
+
+    // The table, indexed by the low bits of the key
+    private final long[] keys;
+    private final int[] proofs;
+    private final int[] disproofs;
+    // The move that proves each proven position
+    private final int[] moves;
+
+    // The moves of each ply, allocated as the search reaches it
+    private final int[][] moveLists;
+    // The empty cells of the board, as scratch space
+    private final long[] emptyCells;
+
+    private long budget;
+    private boolean aborted;
+    // Counters of the last solve()
+    private long nodes;
+    private long time;
+    private long proofSize;
+
+    /**
+     * Constructor for the ProofSolver class
+     *
+     * @param ai
+     *            the Bee that is solving, asked whether the move is still needed
+     * @param gridSize
+     *            the size of the board
+     */
+    ProofSolver(BeeGameAI ai, int gridSize) {
+        this.ai = ai;
+        zobrist = Zobrist.forSize(gridSize);
+        board = new BitBoard(gridSize);
+        chains = new Chains(board);
+        keys = new long[TABLE_SIZE];
+        proofs = new int[TABLE_SIZE];
+        disproofs = new int[TABLE_SIZE];
+        moves = new int[TABLE_SIZE];
+        moveLists = new int[board.cells() + 1][];
+        emptyCells = new long[board.words()];
+    }
+
+    /**
+     * Tries to prove who wins a position
+     *
+     * @param position
+     *            the board
+     * @param colour
+     *            the colour to move
+     * @param nodeBudget
+     *            the most positions to expand before giving up
+     * @return WIN, LOSS or UNKNOWN, for the colour to move
+     */
+    int solve(BitBoard position, int colour, long nodeBudget) {
+        long start = System.nanoTime();
+        board.copyFrom(position);
+        chains.rebuild();
+        hash = zobrist.hash(board);
+        if(colour == BLUE) hash ^= zobrist.side();
+        budget = nodeBudget;
+        aborted = false;
+        nodes = 0;
+        proofSize = 0;
+
+        // The table is cleared between solves, since an
+        // abandoned search leaves numbers that are only estimates
+        for(int i = 0; i < TABLE_SIZE; i++) {
+            keys[i] = 0;
+        }
+
+        int result = UNKNOWN;
+        if(chains.isConnected(colour == RED ? BLUE : RED)) {
+            result = LOSS;
+        }
+        else {
+            search(0, INFINITY, INFINITY, colour);
+            int index = index(hash);
+            if(!aborted && keys[index] == hash) {
+                if(proofs[index] == 0) result = WIN;
+                else if(disproofs[index] == 0) result = LOSS;
+            }
+            if(result == WIN) proofSize = proofSize(colour, true, new HashSet<Long>());
+        }
+        time = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Returns the move that wins the position of the last solve(), if it returned WIN
+     */
+    int winningMove() {
+        return moves[index(hash)];
+    }
+
+    /**
+     * Returns the number of positions the last solve() expanded
+     */
+    long nodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the time the last solve() took, in nanoseconds
+     */
+    long time() {
+        return time;
+    }
+
+    /**
+     * Returns the number of positions in the proof of the last solve(), or 0 if it did not prove a win. A position reached by several paths counts once.
+     */
+    long proofSize() {
+        return proofSize;
+    }
+
+    /**
+     * Expands the current position until it is solved or its numbers reach the thresholds, and stores its numbers in the table
+     *
+     * @param ply
+     *            the number of moves from the root
+     * @param proofThreshold
+     *            the proof number at which another position would be better to expand
+     * @param disproofThreshold
+     *            the disproof number at which another position would be better to expand
+     * @param colour
+     *            the colour to move
+     */
+    private void search(int ply, int proofThreshold, int disproofThreshold, int colour) {
+        nodes++;
+        if(nodes > budget || ai.searchStopped()) {
+            aborted = true;
+            return;
+        }
+        int other = colour == RED ? BLUE : RED;
+
+        // Lists the moves. One that connects the
+        // colour's sides proves the position at once.
+        if(moveLists[ply] == null) moveLists[ply] = new int[board.cells()];
+        int[] cells = moveLists[ply];
+        int count = 0;
+        board.emptyInterior(emptyCells);
+        for(int cell = BitBoard.next(emptyCells, 0); cell >= 0; cell = BitBoard.next(emptyCells, cell + 1)) {
+            if(connects(cell, colour)) {
+                store(hash, 0, INFINITY, cell);
+                return;
+            }
+            cells[count++] = cell;
+        }
+
+        while(true) {
+            // The proof number is the smallest disproof number of the
+            // children and the disproof number the sum of their proof numbers
+            int proof = INFINITY;
+            int disproof = 0;
+            int best = 0;
+            int bestProof = 0;
+            int secondDisproof = INFINITY;
+            for(int i = 0; i < count; i++) {
+                long key = childKey(cells[i], colour);
+                int index = index(key);
+                boolean known = keys[index] == key;
+                int childProof = known ? proofs[index] : 1;
+                int childDisproof = known ? disproofs[index] : 1;
+                if(childDisproof < proof) {
+                    secondDisproof = proof;
+                    proof = childDisproof;
+                    best = i;
+                    bestProof = childProof;
+                }
+                else if(childDisproof < secondDisproof) {
+                    secondDisproof = childDisproof;
+                }
+                disproof = Math.min(INFINITY, disproof + childProof);
+            }
+            if(count == 0) proof = INFINITY;
+
+            if(proof >= proofThreshold || disproof >= disproofThreshold) {
+                store(hash, proof, disproof, count == 0 ? -1 : cells[best]);
+                return;
+            }
+
+            // Expands the most promising child until its numbers
+            // say another child or another position is better.
+            int childProofThreshold = disproofThreshold - disproof + bestProof;
+            int childDisproofThreshold = Math.min(proofThreshold, secondDisproof + 1);
+            placePiece(cells[best], colour);
+            search(ply + 1, childProofThreshold, childDisproofThreshold, other);
+            removePiece(cells[best], colour);
+            if(aborted) return;
+        }
+    }
+
+    /**
+     * Counts the positions of a proof
+     *
+     * @param colour
+     *            the colour to move
+     * @param winner
+     *            true if the colour to move is the one that wins
+     * @param seen
+     *            the keys of the positions counted already
+     */
+    private long proofSize(int colour, boolean winner, HashSet<Long> seen) {
+        if(!seen.add(hash)) return 0;
+        int other = colour == RED ? BLUE : RED;
+        long size = 1;
+        if(winner) {
+            // The winner only needs its winning move
+            int index = index(hash);
+            if(keys[index] != hash || proofs[index] != 0) return size;
+            int cell = moves[index];
+            if(connects(cell, colour)) return size;
+            placePiece(cell, colour);
+            size += proofSize(other, false, seen);
+            removePiece(cell, colour);
+        }
+        else {
+            // The loser's every move has to be answered
+            int[] cells = new int[board.cells()];
+            int count = 0;
+            board.emptyInterior(emptyCells);
+            for(int cell = BitBoard.next(emptyCells, 0); cell >= 0; cell = BitBoard.next(emptyCells, cell + 1)) {
+                cells[count++] = cell;
+            }
+            for(int i = 0; i < count; i++) {
+                placePiece(cells[i], colour);
+                size += proofSize(other, true, seen);
+                removePiece(cells[i], colour);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Checks if a move connects the sides of the colour making it
+     */
+    private boolean connects(int cell, int colour) {
+        board.set(cell, colour);
+        chains.place(cell);
+        boolean connected = chains.isConnected(colour);
+        chains.undo();
+        board.set(cell, 0);
+        return connected;
+    }
+
+    private void placePiece(int cell, int colour) {
+        board.set(cell, colour);
+        chains.place(cell);
+        hash ^= zobrist.key(cell, colour) ^ zobrist.side();
+    }
+
+    private void removePiece(int cell, int colour) {
+        chains.undo();
+        board.set(cell, 0);
+        hash ^= zobrist.key(cell, colour) ^ zobrist.side();
+    }
+
+    private long childKey(int cell, int colour) {
+        return hash ^ zobrist.key(cell, colour) ^ zobrist.side();
+    }
+
+    private void store(long key, int proof, int disproof, int move) {
+        int index = index(key);
+        keys[index] = key;
+        proofs[index] = proof;
+        disproofs[index] = disproof;
+        moves[index] = move;
+    }
+
+    private static int index(long key) {
+        return (int) (key ^ key >>> 32) & TABLE_SIZE - 1;
+    }
+}
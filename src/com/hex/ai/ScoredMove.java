@@ -0,0 +1,23 @@
+package com.hex.ai;
+
+import com.hex.core.Point;
+
+/**
+ * A move chosen by an Engine, in game coordinates, with the score the engine gave it.
+ *
+ * Scores are in the engine's own units, larger is better for the player making the move, and an engine that does not score its moves gives them all 0.
+ */
+public final class ScoredMove {
+    public final Point move;
+    public final int score;
+
+    public ScoredMove(Point move, int score) {
+        this.move = move;
+        this.score = score;
+    }
+
+    @Override
+    public String toString() {
+        return move + " (" + score + ")";
+    }
+}
@@ -0,0 +1,19 @@
+package com.hex.ai;
+
+/**
+ * Told about every move an engine searches for, with the metrics of the search. Moves from an opening book, and Bee's moves that were found while pondering,
+ * are not searched and are not reported.
+ *
+ * Both calls are made on the thread that asked for the move, and the search waits for them, so they should be quick.
+ */
+public interface SearchListener {
+    /**
+     * Called before an engine starts searching for a move
+     */
+    public void searchStarted();
+
+    /**
+     * Called once an engine has chosen a move
+     */
+    public void searchFinished(SearchMetrics metrics);
+}
@@ -0,0 +1,166 @@
+package com.hex.ai;
+
+import java.util.Arrays;
+
+/**
+ * What an engine did to choose one move: how many positions it searched, how well its caches worked, where its cutoffs came and where its time went.
+ *
+ * The phase times are only measured while a SearchListener is set, and they add up the time of every thread, so with several threads they can be more than the
+ * time of the move. Counters an engine does not keep are 0.
+ */
+public final class SearchMetrics {
+    private final String engine;
+    private final int gridSize;
+    private final int colour;
+
+    // Filled in by the engine before the metrics are handed out
+    int depth;
+    long nodes;
+    long evaluations;
+    long tableHits;
+    long tableMisses;
+    final long[] depthCutoffs;
+    long buildTime;
+    long relaxTime;
+    long analyseTime;
+    long sortTime;
+    long solverNodes;
+    long time;
+    long allocatedBytes;
+
+    SearchMetrics(String engine, int gridSize, int colour, int maxDepth) {
+        this.engine = engine;
+        this.gridSize = gridSize;
+        this.colour = colour;
+        depthCutoffs = new long[maxDepth + 1];
+    }
+
+    /**
+     * Returns the name of the engine, such as Bee
+     */
+    public String getEngine() {
+        return engine;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    /**
+     * Returns the team the move was chosen for
+     */
+    public int getColour() {
+        return colour;
+    }
+
+    /**
+     * Returns the deepest search that finished, or 0 if the move was found without one
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the number of positions expanded, or the number of playouts for MCTS
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of positions evaluated at the leaves of the search, from the table or not
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Returns the number of transposition table look-ups that found their position
+     */
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    /**
+     * Returns the number of transposition table look-ups that did not find their position
+     */
+    public long getTableMisses() {
+        return tableMisses;
+    }
+
+    /**
+     * Returns the share of the transposition table look-ups that found their position, or 0 if there were none
+     */
+    public double getTableHitRate() {
+        long probes = tableHits + tableMisses;
+        return probes == 0 ? 0 : (double) tableHits / probes;
+    }
+
+    /**
+     * Returns the number of beta cutoffs at each depth, from the root at 0
+     */
+    public long[] getDepthCutoffs() {
+        return depthCutoffs.clone();
+    }
+
+    /**
+     * Returns the time spent building the chains and the two-distance arrays of root positions, in nanoseconds
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    /**
+     * Returns the time spent updating the two-distance arrays as pieces were placed and removed, in nanoseconds
+     */
+    public long getRelaxTime() {
+        return relaxTime;
+    }
+
+    /**
+     * Returns the time spent reading moves and evaluations off the two-distance arrays, in nanoseconds
+     */
+    public long getAnalyseTime() {
+        return analyseTime;
+    }
+
+    /**
+     * Returns the time spent sorting and ordering moves, in nanoseconds
+     */
+    public long getSortTime() {
+        return sortTime;
+    }
+
+    /**
+     * Returns the number of positions the exact solver expanded
+     */
+    public long getSolverNodes() {
+        return solverNodes;
+    }
+
+    /**
+     * Returns the time the move took, in nanoseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the nodes searched per second
+     */
+    public long getNodesPerSecond() {
+        return time == 0 ? 0 : nodes * 1000000000L / time;
+    }
+
+    /**
+     * Returns the bytes allocated for the move on every thread, or -1 if the JVM does not count them
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return engine + " " + gridSize + "x" + gridSize + ": depth " + depth + ", " + nodes + " nodes in " + time / 1000000 + "ms (" + getNodesPerSecond() + "/s), " + evaluations + " evaluations, table hit rate " + Math.round(getTableHitRate() * 100) + "%, cutoffs " + Arrays.toString(depthCutoffs) + ", build " + buildTime / 1000000 + "ms, relax " + relaxTime / 1000000 + "ms, analyse " + analyseTime / 1000000 + "ms, sort " + sortTime / 1000000 + "ms, solver " + solverNodes + " nodes, " + allocatedBytes + " bytes allocated";
+    }
+}
@@ -0,0 +1,204 @@
+package com.hex.ai;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.Random;
+
+import com.hex.core.Game;
+import com.hex.core.GameAction;
+import com.hex.core.Move;
+import com.hex.core.Point;
+import com.hex.core.Timer;
+
+/**
+ * Checks of behaviour the AIs promise but that no single game shows, to run before a release alongside the benchmarks.
+ *
+ * Each check prints its name and whether it passed, and the program exits with status 1 if any of them failed. The checks are: that MCTS sizes its tree from
+ * the budget of the move, and stops once the tree is full instead of running on without growing it; that Bee chooses the same move whatever the number of
+ * threads, and whatever the transposition table has seen of the position's mirror images; that WinDetector sees a win made after an undo;
+ * and that GameAI, which is saved with the game, can be written to a stream and read back in the middle of a game.
+ *
+ * Usage: SelfChecks
+ */
+public final class SelfChecks {
+    private final static int RED = 1;
+    private final static int TABLE_MEMORY = 1024 * 1024;
+
+    private int failures;
+
+    /**
+     * One check
+     */
+    private interface Check {
+        /**
+         * Runs the check
+         *
+         * @return null if it passed, or what went wrong
+         */
+        String run() throws Exception;
+    }
+
+    private void check(String name, Check check) {
+        String failure;
+        try {
+            failure = check.run();
+        }
+        catch(Exception e) {
+            failure = e.toString();
+        }
+        if(failure != null) failures++;
+        System.out.println((failure == null ? "passed " : "FAILED ") + name + (failure == null ? "" : ": " + failure));
+    }
+
+    private void checkMcts() {
+        check("MCTS allocates for the budget of the move", new Check() {
+            @Override
+            public String run() {
+                long before = Allocations.currentThread();
+                new MctsGameAI(RED, 7, 100, 1).chooseMove(new Position(7, false), Budget.DEFAULT);
+                // Without the allocation counter there is nothing to check
+                if(before < 0) return null;
+                long allocated = Allocations.currentThread() - before;
+                return allocated < 1024 * 1024 ? null : allocated + " bytes for 100 playouts";
+            }
+        });
+        check("MCTS stops once its tree is full", new Check() {
+            @Override
+            public String run() {
+                // Far more playouts than the tree has room for, with a time limit that is only a safety net
+                long start = System.nanoTime();
+                ScoredMove move = new MctsGameAI(RED, 5, 1, 1).chooseMove(new Position(5, false), Budget.of(Integer.MAX_VALUE, 60000));
+                long millis = (System.nanoTime() - start) / 1000000;
+                if(move == null) return "no move";
+                return millis < 30000 ? null : "ran for " + millis + " ms";
+            }
+        });
+    }
+
+    private void checkDeterminism() {
+        check("Bee plays the same move on 1 and 4 threads", new Check() {
+            @Override
+            public String run() {
+                // A stone in the middle, so the position is its own half turn
+                Position position = new Position(7, false).play(3, 3);
+                String single = move(new BeeGameAI(position.getTeam(), 7, 3, 4, TABLE_MEMORY, 1), position);
+                for(int i = 0; i < 5; i++) {
+                    String parallel = move(new BeeGameAI(position.getTeam(), 7, 3, 4, TABLE_MEMORY, 4), position);
+                    if(!parallel.equals(single)) return single + " on 1 thread, " + parallel + " on 4";
+                }
+                return null;
+            }
+        });
+        check("Bee's move does not depend on the mirror images in its table", new Check() {
+            @Override
+            public String run() {
+                int gridSize = 7;
+                Random random = new Random(gridSize);
+                for(int i = 0; i < 8; i++) {
+                    Position position = new Position(gridSize, false);
+                    Position turned = position;
+                    for(int ply = 0; ply < 2 + i % 3; ply++) {
+                        int x, y;
+                        do {
+                            x = random.nextInt(gridSize);
+                            y = random.nextInt(gridSize);
+                        } while(!position.isLegal(x, y));
+                        position = position.play(x, y);
+                        turned = turned.play(gridSize - 1 - x, gridSize - 1 - y);
+                    }
+                    String fresh = move(new BeeGameAI(position.getTeam(), gridSize, 3, 4, new TranspositionTable(TABLE_MEMORY), 1), position);
+                    TranspositionTable table = new TranspositionTable(TABLE_MEMORY);
+                    move(new BeeGameAI(turned.getTeam(), gridSize, 3, 4, table, 1), turned);
+                    String shared = move(new BeeGameAI(position.getTeam(), gridSize, 3, 4, table, 1), position);
+                    if(!shared.equals(fresh)) return fresh + " from an empty table, " + shared + " after the half turn";
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Returns the move and score an engine chooses
+     */
+    private static String move(Engine engine, Position position) {
+        ScoredMove move = engine.chooseMove(position, Budget.DEFAULT);
+        return move == null ? "no move" : move.move.x + "," + move.move.y + " (" + move.score + ")";
+    }
+
+    private void checkWinDetector() {
+        check("WinDetector follows an undo", new Check() {
+            @Override
+            public String run() {
+                Game.GameOptions options = new Game.GameOptions();
+                options.gridSize = 3;
+                options.timer = new Timer(0, 0, Timer.NO_TIMER);
+                GameAI red = new GameAI(1);
+                GameAI blue = new GameAI(2);
+                Game game = new Game(options, red, blue);
+                WinDetector detector = new WinDetector(3);
+                GameAction.makeMove(red, new Point(0, 1), game);
+                GameAction.makeMove(blue, new Point(1, 0), game);
+                GameAction.makeMove(red, new Point(2, 1), game);
+                GameAction.makeMove(blue, new Point(1, 1), game);
+                if(detector.checkWinPlayer(1, game)) return "a win before the undo";
+
+                // Take back two moves, as GameAction.undo() does, and play two others, so the move list is as long as before
+                for(int i = 0; i < 2; i++) {
+                    Move move = game.getMoveList().getMove();
+                    game.gamePieces[move.getX()][move.getY()].setTeam((byte) 0, game);
+                    game.getMoveList().removeMove();
+                }
+                GameAction.makeMove(red, new Point(1, 1), game);
+                GameAction.makeMove(blue, new Point(2, 2), game);
+                GameAction.makeMove(red, new Point(2, 0), game);
+                return detector.checkWinPlayer(1, game) ? null : "the win was missed";
+            }
+        });
+    }
+
+    private void checkSerialization() {
+        check("GameAI is serializable", new Check() {
+            @Override
+            public String run() throws Exception {
+                int gridSize = 9;
+                GameAI ai = new GameAI(RED);
+                ai.setMoveDelay(0);
+                Random random = new Random(gridSize);
+                Position position = new Position(gridSize, false);
+                for(int turn = 0; turn < 6 && position.getWinner() == 0; turn++) {
+                    position = position.play(ai.chooseMove(position, Budget.DEFAULT).move);
+                    int x, y;
+                    do {
+                        x = random.nextInt(gridSize);
+                        y = random.nextInt(gridSize);
+                    } while(!position.isLegal(x, y));
+                    position = position.play(x, y);
+                }
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(ai);
+                out.close();
+                GameAI copy = (GameAI) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+                if(((List<?>) copy.getSaveState()).size() != ((List<?>) ai.getSaveState()).size()) return "the history was not kept";
+                ScoredMove move = copy.chooseMove(position, Budget.DEFAULT);
+                return move != null && position.isLegal(move.move.x, move.move.y) ? null : "the copy made no legal move";
+            }
+        });
+    }
+
+    public static void main(String[] args) {
+        SelfChecks checks = new SelfChecks();
+        checks.checkMcts();
+        checks.checkDeterminism();
+        checks.checkWinDetector();
+        checks.checkSerialization();
+        if(checks.failures > 0) {
+            System.out.println(checks.failures + " checks failed");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package com.hex.ai;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays AI-against-AI games headlessly on every core and rates the players, for tuning the AIs' settings.
+ *
+ * Every pair of entrants plays the same number of games on each board size, taking turns to move first. A game is played through the Engine API, with fresh
+ * players, so games share nothing and any number of them can run at once. Each player searches on one thread and the games are spread over the cores.
+ *
+ * Bee searches the same way every time it sees a position, so games from the empty board would be replays of one another. Every game instead starts from a
+ * few random moves, chosen from the index of the game so that a resumed tournament plays the same ones. The two games of a pair, in which the entrants swap
+ * colours, start from the same moves, so neither entrant is favoured by a lopsided opening.
+ *
+ * An entrant is given as Type:difficulty, where Type is one of AiTypes, followed by any of these settings, separated by commas: depth=, beam= (Bee), playouts=
+ * (MCTS), nodes= and millis= (the budget of every move). For example BeeAI:3,depth=4 or MctsAI:2,millis=100.
+ *
+ * Every game is written to the results file as soon as it ends, one line each, so a tournament that is stopped can be started again with the same arguments
+ * and only plays the games that are missing. At the end the Elo ratings, the games per second and the move-time percentiles of every entrant are printed.
+ *
+ * Usage: Tournament file games swap gridSize[,gridSize...] entrant entrant...
+ */
+public final class Tournament {
+    // The transposition table of each Bee, smaller than in a game since a game runs on every core
+    private final static int TABLE_MEMORY = 4 * 1024 * 1024;
+    private final static int REPORT_INTERVAL = 100;
+    // The random moves every game starts with
+    private final static int OPENING_MOVES = 2;
+
+    private final File file;
+    private final Entrant[] entrants;
+    private final int[] sizes;
+    private final int games;
+    private final boolean swap;
+    private final int threads;
+
+    // The results so far, by the index of the game, or null if it has not been played
+    private final Result[] results;
+    private int played;
+    private PrintWriter output;
+
+    /**
+     * Constructor for the Tournament class
+     *
+     * @param file
+     *            the results file, read first if it exists
+     * @param entrants
+     *            the players
+     * @param sizes
+     *            the board sizes to play on
+     * @param games
+     *            the number of games each pair of entrants plays on each size, rounded up to an even number so both move first as often
+     * @param swap
+     *            whether the games are played with the swap rule
+     * @param threads
+     *            the number of games to play at once
+     */
+    public Tournament(File file, Entrant[] entrants, int[] sizes, int games, boolean swap, int threads) {
+        this.file = file;
+        this.entrants = entrants.clone();
+        this.sizes = sizes.clone();
+        this.games = games + games % 2;
+        this.swap = swap;
+        this.threads = Math.max(1, threads);
+        int pairs = entrants.length * (entrants.length - 1) / 2;
+        results = new Result[pairs * this.sizes.length * this.games];
+    }
+
+    /**
+     * Plays the games that are not in the results file yet
+     */
+    public void run() throws IOException, InterruptedException {
+        int resumed = load();
+        output = new PrintWriter(new FileWriter(file, true));
+        if(resumed == 0 && file.length() == 0) {
+            output.println("# game\tsize\tswap\tfirst\tsecond\twinner\tmoves\tfirst move times (us)\tsecond move times (us)");
+            output.flush();
+        }
+        System.out.println(results.length + " games, " + resumed + " already played");
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for(int i = 0; i < results.length; i++) {
+            if(results[i] != null) continue;
+            final int game = i;
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // A game whose player fails is left out,
+                    // to be played again when the tournament resumes
+                    try {
+                        record(play(game));
+                    }
+                    catch(RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        output.close();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        report(played, seconds);
+    }
+
+    /**
+     * Reads the games already in the results file
+     *
+     * @return the number of games read
+     * @throws IOException
+     *             if the file can not be read or was written by a different tournament
+     */
+    private int load() throws IOException {
+        if(!file.exists()) return 0;
+        int count = 0;
+        BufferedReader input = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while((line = input.readLine()) != null) {
+                if(line.isEmpty() || line.startsWith("#")) continue;
+                Result result = Result.parse(line);
+                if(result == null || result.game >= results.length || !result.matches(this)) {
+                    throw new IOException(file + " was written by a different tournament: " + line);
+                }
+                if(results[result.game] == null) count++;
+                results[result.game] = result;
+            }
+        }
+        finally {
+            input.close();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the board size of a game
+     */
+    private int size(int game) {
+        return sizes[game / games % sizes.length];
+    }
+
+    /**
+     * Returns the entrant that moves first in a game, or second if first is false
+     */
+    private int entrant(int game, boolean first) {
+        int pair = game / games / sizes.length;
+        int a = 0;
+        while(pair >= entrants.length - 1 - a) {
+            pair -= entrants.length - 1 - a;
+            a++;
+        }
+        int b = a + 1 + pair;
+        return (game % 2 == 0) == first ? a : b;
+    }
+
+    /**
+     * Plays a game. A player that fails to return a legal move loses.
+     */
+    private Result play(int game) {
+        int size = size(game);
+        Entrant[] players = { null, entrants[entrant(game, true)], entrants[entrant(game, false)] };
+        Engine[] engines = { null, players[1].create(1, size), players[2].create(2, size) };
+        List<List<Long>> times = new ArrayList<List<Long>>();
+        times.add(null);
+        times.add(new ArrayList<Long>());
+        times.add(new ArrayList<Long>());
+
+        Position position = opening(game, size);
+        int winner = 0;
+        while(winner == 0) {
+            int team = position.getTeam();
+            long start = System.nanoTime();
+            ScoredMove move = engines[team].chooseMove(position, players[team].budget);
+            times.get(team).add((System.nanoTime() - start) / 1000);
+            if(move == null || !position.isLegal(move.move.x, move.move.y)) {
+                winner = team == 1 ? 2 : 1;
+                break;
+            }
+            position = position.play(move.move);
+            winner = position.getWinner();
+        }
+        return new Result(game, size, swap, players[1].name, players[2].name, winner, position.getMoveNumber() - 1, times.get(1), times.get(2));
+    }
+
+    /**
+     * Returns the position a game starts from: OPENING_MOVES random moves, the same for both games of a pair
+     */
+    private Position opening(int game, int size) {
+        Random random = new Random(game / 2);
+        Position position = new Position(size, swap);
+        for(int i = 0; i < OPENING_MOVES; i++) {
+            int x, y;
+            do {
+                x = random.nextInt(size);
+                y = random.nextInt(size);
+            } while(!position.isLegal(x, y));
+            position = position.play(x, y);
+        }
+        return position;
+    }
+
+    /**
+     * Writes the result of a game to the results file
+     */
+    private synchronized void record(Result result) {
+        results[result.game] = result;
+        output.println(result);
+        output.flush();
+        played++;
+        if(played % REPORT_INTERVAL == 0) System.out.println(played + " games played");
+    }
+
+    /**
+     * Prints the ratings, the throughput and the move times
+     *
+     * @param played
+     *            the number of games played in this run
+     * @param seconds
+     *            the time this run took
+     */
+    private void report(int played, double seconds) {
+        int[][] wins = new int[entrants.length][entrants.length];
+        int[] gameCounts = new int[entrants.length];
+        List<List<Long>> times = new ArrayList<List<Long>>();
+        for(int i = 0; i < entrants.length; i++) {
+            times.add(new ArrayList<Long>());
+        }
+        long moves = 0;
+        for(int i = 0; i < results.length; i++) {
+            Result result = results[i];
+            if(result == null) continue;
+            int first = entrant(i, true);
+            int second = entrant(i, false);
+            if(result.winner == 1) wins[first][second]++;
+            else wins[second][first]++;
+            gameCounts[first]++;
+            gameCounts[second]++;
+            times.get(first).addAll(result.firstTimes);
+            times.get(second).addAll(result.secondTimes);
+            moves += result.moves;
+        }
+
+        EloRatings ratings = new EloRatings(wins);
+        System.out.println();
+        System.out.println(String.format("%-30s %6s %6s %14s %9s %9s %9s %9s", "Entrant", "Games", "Wins", "Elo", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for(int i = 0; i < entrants.length; i++) {
+            int won = 0;
+            for(int j = 0; j < entrants.length; j++) {
+                won += wins[i][j];
+            }
+            long[] sorted = new long[times.get(i).size()];
+            for(int k = 0; k < sorted.length; k++) {
+                sorted[k] = times.get(i).get(k);
+            }
+            Arrays.sort(sorted);
+            System.out.println(String.format("%-30s %6d %6d %6.0f +- %4.0f %9.1f %9.1f %9.1f %9.1f", entrants[i].name, gameCounts[i], won, ratings.rating(i), ratings.interval(i), percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 100)));
+        }
+        System.out.println();
+        System.out.println(String.format("%d games in %.1fs this run: %.2f games/s on %d threads, %d moves in all games", played, seconds, played / Math.max(seconds, 1e-9), threads, moves));
+    }
+
+    /**
+     * Returns a percentile of sorted move times in microseconds, in milliseconds
+     */
+    private static double percentile(long[] sorted, int percent) {
+        if(sorted.length == 0) return 0;
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(0, index)] / 1000.0;
+    }
+
+    /**
+     * A player of a tournament: an AI type with its settings and the budget of its moves
+     */
+    public static final class Entrant {
+        final String name;
+        final AiTypes type;
+        final int depth, beamSize, playouts;
+        final Budget budget;
+
+        /**
+         * Parses an entrant, as Type:difficulty followed by settings separated by commas
+         *
+         * @throws IllegalArgumentException
+         *             if it can not be parsed
+         */
+        public Entrant(String spec) {
+            name = spec;
+            String[] parts = spec.split(",");
+            String[] typeAndDifficulty = parts[0].split(":");
+            type = AiTypes.valueOf(typeAndDifficulty[0]);
+            int difficulty = typeAndDifficulty.length > 1 ? Integer.parseInt(typeAndDifficulty[1]) : 1;
+            int depth = AiTypes.beeDepth(difficulty);
+            int beamSize = AiTypes.beeBeamSize(difficulty);
+            int playouts = AiTypes.mctsPlayouts(difficulty);
+            long nodes = 0;
+            long millis = 0;
+            for(int i = 1; i < parts.length; i++) {
+                String[] setting = parts[i].split("=");
+                if(setting.length != 2) throw new IllegalArgumentException("Bad setting " + parts[i] + " in " + spec);
+                long value = Long.parseLong(setting[1]);
+                if(setting[0].equals("depth")) depth = (int) value;
+                else if(setting[0].equals("beam")) beamSize = (int) value;
+                else if(setting[0].equals("playouts")) playouts = (int) value;
+                else if(setting[0].equals("nodes")) nodes = value;
+                else if(setting[0].equals("millis")) millis = value;
+                else throw new IllegalArgumentException("Unknown setting " + setting[0] + " in " + spec);
+            }
+            this.depth = depth;
+            this.beamSize = beamSize;
+            this.playouts = playouts;
+            budget = nodes == 0 && millis == 0 ? Budget.DEFAULT : Budget.of(nodes, millis);
+        }
+
+        /**
+         * Creates a player of this entrant for one game, searching on one thread
+         */
+        Engine create(int team, int gridSize) {
+            switch(type) {
+            case GameAI:
+                return new GameAI(team);
+            case BeeAI:
+                return new BeeGameAI(team, gridSize, depth, beamSize, TABLE_MEMORY, 1);
+            case MctsAI:
+                return new MctsGameAI(team, gridSize, playouts, 1);
+            }
+            throw new IllegalArgumentException("Unknown AI type " + type);
+        }
+    }
+
+    /**
+     * The result of one game, as written to the results file
+     */
+    private static final class Result {
+        final int game, size;
+        final boolean swap;
+        final String first, second;
+        final int winner, moves;
+        // The time each move took, in microseconds
+        final List<Long> firstTimes, secondTimes;
+
+        Result(int game, int size, boolean swap, String first, String second, int winner, int moves, List<Long> firstTimes, List<Long> secondTimes) {
+            this.game = game;
+            this.size = size;
+            this.swap = swap;
+            this.first = first;
+            this.second = second;
+            this.winner = winner;
+            this.moves = moves;
+            this.firstTimes = firstTimes;
+            this.secondTimes = secondTimes;
+        }
+
+        /**
+         * Checks if the game is the one the tournament plays as its game of this index
+         */
+        boolean matches(Tournament tournament) {
+            return size == tournament.size(game) && swap == tournament.swap && first.equals(tournament.entrants[tournament.entrant(game, true)].name) && second.equals(tournament.entrants[tournament.entrant(game, false)].name);
+        }
+
+        /**
+         * Parses a line of the results file
+         *
+         * @return the result, or null if the line is not one
+         */
+        static Result parse(String line) {
+            String[] fields = line.split("\t", -1);
+            if(fields.length != 9) return null;
+            try {
+                return new Result(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Boolean.parseBoolean(fields[2]), fields[3], fields[4], Integer.parseInt(fields[5]), Integer.parseInt(fields[6]), parseTimes(fields[7]), parseTimes(fields[8]));
+            }
+            catch(NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static List<Long> parseTimes(String field) {
+            List<Long> times = new ArrayList<Long>();
+            if(field.isEmpty()) return times;
+            for(String time : field.split(",")) {
+                times.add(Long.parseLong(time));
+            }
+            return times;
+        }
+
+        private static String formatTimes(List<Long> times) {
+            StringBuilder builder = new StringBuilder();
+            for(int i = 0; i < times.size(); i++) {
+                if(i > 0) builder.append(',');
+                builder.append(times.get(i));
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            return game + "\t" + size + "\t" + swap + "\t" + first + "\t" + second + "\t" + winner + "\t" + moves + "\t" + formatTimes(firstTimes) + "\t" + formatTimes(secondTimes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length < 6) {
+            System.err.println("Usage: Tournament file games swap gridSize[,gridSize...] entrant entrant...");
+            System.exit(1);
+        }
+        int games = Integer.parseInt(args[1]);
+        boolean swap = Boolean.parseBoolean(args[2]);
+        String[] sizeList = args[3].split(",");
+        int[] sizes = new int[sizeList.length];
+        for(int i = 0; i < sizes.length; i++) {
+            sizes[i] = Integer.parseInt(sizeList[i]);
+        }
+        Entrant[] entrants = new Entrant[args.length - 4];
+        for(int i = 0; i < entrants.length; i++) {
+            entrants[i] = new Entrant(args[i + 4]);
+        }
+        new Tournament(new File(args[0]), entrants, sizes, games, swap, Runtime.getRuntime().availableProcessors()).run();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,137 @@
+package com.hex.ai;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size transposition table keyed by Zobrist hashes.
+ *
+ * Entries are stored in a single primitive array, two longs per entry, and grouped in buckets of two. Buckets use depth-preferred replacement: an entry for the same position is
+ * overwritten, unless it is from this search and deeper than the new one, otherwise the entry left over from an older search or, failing that, the shallower
+ * entry is evicted.
+ *
+ * The first long of an entry is the key xor'ed with the data, so a probe that reads a half written entry simply misses.
+ */
+final class TranspositionTable {
+    // The stored value is exact, at least (LOWER) or at most (UPPER) the real value of the position
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+    static final int NO_MOVE = 0xFFF;
+    static final long MISS = 0;
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int BUCKET_SIZE = 2;
+    private static final long VALID = 1L << 63;
+
+    private final long[] entries;
+    private final int bucketMask;
+    // Read by every store(), so a table shared between threads sees a new search at once
+    private volatile int generation;
+
+    /**
+     * Creates a table that uses at most the given amount of memory.
+     *
+     * @param maxBytes
+     *            the memory cap of the table, rounded down to a power of two entries
+     */
+    TranspositionTable(long maxBytes) {
+        long buckets = Math.max(1, maxBytes / (ENTRY_BYTES * BUCKET_SIZE));
+        int size = Integer.highestOneBit((int) Math.min(buckets, 1 << 26));
+        entries = new long[size * BUCKET_SIZE * 2];
+        bucketMask = size - 1;
+    }
+
+    /**
+     * Marks the start of a new search. Entries from older searches are replaced first.
+     */
+    synchronized void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    synchronized void clear() {
+        Arrays.fill(entries, 0);
+        generation = 0;
+    }
+
+    /**
+     * Looks up a position
+     *
+     * @param key
+     *            the Zobrist key of the position
+     * @return the packed entry, or MISS if the position is not in the table
+     */
+    long probe(long key) {
+        int index = bucketIndex(key);
+        for(int i = 0; i < BUCKET_SIZE; i++, index += 2) {
+            long data = entries[index + 1];
+            if((entries[index] ^ data) == key && data != MISS) return data;
+        }
+        return MISS;
+    }
+
+    /**
+     * Stores a position. A shallower result than the one this search already stored for the position is dropped, so the deeper bound and its move are kept.
+     *
+     * @param key
+     *            the Zobrist key of the position
+     * @param value
+     *            the value of the position
+     * @param depth
+     *            the remaining depth the value was searched to, 0 for a board evaluation
+     * @param bound
+     *            EXACT, LOWER or UPPER
+     * @param move
+     *            the best move found, or NO_MOVE
+     */
+    void store(long key, int value, int depth, int bound, int move) {
+        int index = bucketIndex(key);
+        int victim = -1;
+        int victimWorth = Integer.MAX_VALUE;
+        depth = Math.min(depth, 0xFF);
+        for(int i = 0; i < BUCKET_SIZE; i++, index += 2) {
+            long data = entries[index + 1];
+            if(data == MISS) {
+                victim = index;
+                break;
+            }
+            if((entries[index] ^ data) == key) {
+                if(depth < depth(data) && generation(data) == generation) return;
+                victim = index;
+                break;
+            }
+
+            // Entries from previous searches are worth less than anything from this one
+            int worth = depth(data) + (generation(data) == generation ? 256 : 0);
+            if(worth < victimWorth) {
+                victimWorth = worth;
+                victim = index;
+            }
+        }
+
+        long data = VALID | (long) generation << 54 | (long) bound << 52 | (long) depth << 44 | (long) (move & 0xFFF) << 32 | value & 0xFFFFFFFFL;
+        entries[victim] = key ^ data;
+        entries[victim + 1] = data;
+    }
+
+    private int bucketIndex(long key) {
+        return ((int) (key ^ key >>> 32) & bucketMask) * BUCKET_SIZE * 2;
+    }
+
+    static int value(long data) {
+        return (int) data;
+    }
+
+    static int move(long data) {
+        return (int) (data >>> 32) & 0xFFF;
+    }
+
+    static int depth(long data) {
+        return (int) (data >>> 44) & 0xFF;
+    }
+
+    static int bound(long data) {
+        return (int) (data >>> 52) & 0x3;
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 54) & 0xFF;
+    }
+}
@@ -0,0 +1,478 @@
+package com.hex.ai;
+
+import java.util.Arrays;
+
+/**
+ * The four two-distance arrays of a Bee board, kept up to date while pieces are placed and removed.
+ *
+ * The two-distance of an empty cell is 1 more than the second smallest two-distance of its neighbours, where the neighbours of a cell are the empty cells next to it
+ * or next to a chain of the colour's pieces that touches it. Each array starts from two corners of the padded board.
+ *
+ * A new piece only ever lowers the distances of its own colour, and only ever raises the distances of the other colour, so both are repaired locally: lowered
+ * values are pushed outwards in order of distance, and raised values are found by invalidating every cell that loses its support and filling the hole back in from
+ * its valid border. Every value that changes is recorded in a trail so undo() is just a rollback.
+ *
+ * The neighbours of cells next to a chain are worked out from the chain's neighbourhood in Chains and kept in one flat array, indexed by (cell, colour), until the
+ * board changes. Nothing is allocated once the scratch arrays have grown to fit.
+ */
+final class TwoDistance {
+    static final int RED_A = 0, RED_B = 1, BLUE_A = 2, BLUE_B = 3;
+    static final int INFINITY = 100000;
+
+    // Cells are only given a two-distance if it is at most LIMIT
+    private static final int LIMIT = 100;
+    private static final int RED = 1, BLUE = 2;
+    // Builds the arrays from scratch level by level, or null to build them breadth first
+    private static final DistanceKernel KERNEL = DistanceKernel.load();
+    private static final int OTHER = DistanceKernel.OTHER, PLAIN = DistanceKernel.PLAIN, NEXT_TO_CHAIN = DistanceKernel.NEXT_TO_CHAIN;
+
+    private final BitBoard board;
+    private final Chains chains;
+    private final int width;
+    private final int[][] distances;
+    private final boolean[] interior;
+    // The six cells next to each cell, or -1 past the edge of the board
+    private final int[] adjacent;
+
+    // The values changed by each place(), as (array, cell) and old value
+    private int[] trailCells = new int[1024];
+    private int[] trailValues = new int[1024];
+    private int trailSize;
+    private final int[] marks;
+    private int markCount;
+
+    // Scratch space
+    private final int[] bucket;
+    private final int[] bucketSize = new int[LIMIT + 1];
+    private int lowestBucket;
+    private final int[] queue;
+    private final int[] work;
+    private final boolean[] working;
+    private final int[] invalid;
+    private final int[] invalidated;
+    private int invalidation;
+    private final int[] counts;
+    private final int[] outerNeighbours;
+    private final int[] innerNeighbours;
+    private final long[] reach;
+    // The kind of each cell, for rebuildByLevels()
+    private final int[] kinds;
+
+    // The neighbours of cells next to a chain, as rows of one flat array.
+    // The row of (cell, colour) is valid while its version is the board's.
+    private final int[] rowStart;
+    private final int[] rowLength;
+    private final int[] rowVersion;
+    private int[] rows = new int[1024];
+    private int rowsSize;
+    private int version;
+
+    /**
+     * Constructor for the TwoDistance class
+     *
+     * @param board
+     *            the board to keep the arrays of. Pieces must be put on it before place() and taken off after undo().
+     * @param chains
+     *            the chains of the board, updated before place() and after undo()
+     */
+    TwoDistance(BitBoard board, Chains chains) {
+        this.board = board;
+        this.chains = chains;
+        width = board.width();
+        int cells = board.cells();
+        distances = new int[4][cells];
+        interior = new boolean[cells];
+        for(int i = 1; i < width - 1; i++) {
+            for(int j = 1; j < width - 1; j++) {
+                interior[i * width + j] = true;
+            }
+        }
+        adjacent = board.adjacency();
+        marks = new int[cells + 1];
+        bucket = new int[(LIMIT + 1) * cells];
+        queue = new int[cells];
+        work = new int[cells];
+        working = new boolean[cells];
+        invalid = new int[cells];
+        invalidated = new int[cells];
+        counts = new int[cells];
+        outerNeighbours = new int[cells];
+        innerNeighbours = new int[cells];
+        reach = new long[board.words()];
+        kinds = KERNEL == null ? null : new int[cells];
+        rowStart = new int[cells * 2];
+        rowLength = new int[cells * 2];
+        rowVersion = new int[cells * 2];
+    }
+
+    /**
+     * Returns the two-distance of a cell
+     *
+     * @param array
+     *            RED_A, RED_B, BLUE_A or BLUE_B
+     */
+    int get(int array, int cell) {
+        return distances[array][cell];
+    }
+
+    /**
+     * Builds all four arrays from scratch. The chains must have been rebuilt first.
+     */
+    void rebuild() {
+        boardChanged();
+        trailSize = 0;
+        markCount = 0;
+        int last = width - 1;
+        rebuild(RED_A, RED, 0, last * width);
+        rebuild(RED_B, RED, last, last * width + last);
+        rebuild(BLUE_A, BLUE, 0, last);
+        rebuild(BLUE_B, BLUE, last * width, last * width + last);
+    }
+
+    /**
+     * Builds one array breadth first. A cell is reached as soon as the second of its neighbours is, and since neighbours are reached in order of distance, that
+     * neighbour holds the second minimum.
+     */
+    private void rebuild(int array, int colour, int source1, int source2) {
+        if(KERNEL != null) {
+            rebuildByLevels(array, colour, source1, source2);
+            return;
+        }
+        int[] distance = distances[array];
+        Arrays.fill(distance, INFINITY);
+        Arrays.fill(counts, 0);
+        distance[source1] = 0;
+        distance[source2] = 0;
+        queue[0] = source1;
+        queue[1] = source2;
+        int head = 0;
+        int tail = 2;
+        while(head < tail) {
+            int cell = queue[head++];
+            int value = distance[cell];
+            if(value >= LIMIT) break;
+            int count = neighbours(cell, colour, outerNeighbours);
+            for(int i = 0; i < count; i++) {
+                int neighbour = outerNeighbours[i];
+                if(!interior[neighbour] || distance[neighbour] != INFINITY) continue;
+                if(++counts[neighbour] == 2) {
+                    distance[neighbour] = value + 1;
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds one array a level at a time, with the same values as the breadth first rebuild: the cells at distance level + 1 are the cells not reached yet that
+     * have two neighbours at the level or less. The kernel finds the cells that touch no chain of the colour by looking at the six cells around each of them.
+     * The cells next to a chain have too many neighbours for that, so they count the neighbours reached so far, as in the breadth first rebuild, and every cell
+     * of a level adds itself to the counts of its neighbours that are next to a chain.
+     */
+    private void rebuildByLevels(int array, int colour, int source1, int source2) {
+        int[] distance = distances[array];
+        Arrays.fill(distance, INFINITY);
+        for(int cell = 0; cell < distance.length; cell++) {
+            kinds[cell] = !interior[cell] || !board.isEmpty(cell) ? OTHER : board.touches(cell, colour) ? NEXT_TO_CHAIN : PLAIN;
+            counts[cell] = 0;
+        }
+        distance[source1] = 0;
+        distance[source2] = 0;
+        int[] frontier = queue;
+        int[] next = work;
+        frontier[0] = source1;
+        frontier[1] = source2;
+        int frontierSize = 2;
+        for(int level = 0; level < LIMIT && frontierSize > 0; level++) {
+            int nextSize = KERNEL.step(distance, kinds, width, level, next);
+            for(int i = 0; i < frontierSize; i++) {
+                int cell = frontier[i];
+                if(kinds[cell] == PLAIN) {
+                    // An interior cell has all six cells around it
+                    for(int k = cell * 6; k < cell * 6 + 6; k++) {
+                        nextSize = count(distance, adjacent[k], level, next, nextSize);
+                    }
+                    continue;
+                }
+                int count = neighbours(cell, colour, outerNeighbours);
+                for(int k = 0; k < count; k++) {
+                    nextSize = count(distance, outerNeighbours[k], level, next, nextSize);
+                }
+            }
+            int[] swap = frontier;
+            frontier = next;
+            next = swap;
+            frontierSize = nextSize;
+        }
+    }
+
+    /**
+     * Counts a neighbour at the level or less for a cell, if it is a cell next to a chain not reached yet, and gives the cell level + 1 once it has two
+     *
+     * @return the new size of the next level
+     */
+    private int count(int[] distance, int cell, int level, int[] next, int nextSize) {
+        if(kinds[cell] != NEXT_TO_CHAIN || distance[cell] != INFINITY || ++counts[cell] < 2) return nextSize;
+        distance[cell] = level + 1;
+        next[nextSize] = cell;
+        return nextSize + 1;
+    }
+
+    /**
+     * Updates the arrays after a piece has been placed on the board
+     *
+     * @param cell
+     *            the cell of the piece
+     * @param colour
+     *            the colour of the piece
+     */
+    void place(int cell, int colour) {
+        boardChanged();
+        marks[markCount++] = trailSize;
+        if(colour == RED) {
+            lower(RED_A, RED, cell);
+            lower(RED_B, RED, cell);
+            raise(BLUE_A, BLUE, cell);
+            raise(BLUE_B, BLUE, cell);
+        }
+        else {
+            lower(BLUE_A, BLUE, cell);
+            lower(BLUE_B, BLUE, cell);
+            raise(RED_A, RED, cell);
+            raise(RED_B, RED, cell);
+        }
+    }
+
+    /**
+     * Rolls the arrays back to before the last place(). The piece must be taken off the board afterwards.
+     */
+    void undo() {
+        int mark = marks[--markCount];
+        boardChanged();
+        while(trailSize > mark) {
+            trailSize--;
+            int entry = trailCells[trailSize];
+            distances[entry & 3][entry >>> 2] = trailValues[trailSize];
+        }
+    }
+
+    /**
+     * Updates an array of the colour that was just played. Every cell next to the new chain gains neighbours, so its distance can only go down.
+     */
+    private void lower(int array, int colour, int cell) {
+        set(array, cell, INFINITY);
+
+        lowestBucket = LIMIT + 1;
+        int count = neighbours(cell, colour, outerNeighbours);
+        for(int i = 0; i < count; i++) {
+            relax(array, colour, outerNeighbours[i]);
+        }
+        propagate(array, colour, false);
+    }
+
+    /**
+     * Updates an array of the other colour. The new piece blocks a cell, so the distances of the cells it supported can only go up.
+     */
+    private void raise(int array, int colour, int cell) {
+        int[] distance = distances[array];
+        int old = distance[cell];
+        set(array, cell, INFINITY);
+        if(old == INFINITY) return;
+
+        // Finds every cell that no longer has two neighbours closer than itself,
+        // starting with the neighbours of the blocked cell.
+        int workSize = 0;
+        int count = neighbours(cell, colour, outerNeighbours);
+        for(int i = 0; i < count; i++) {
+            int neighbour = outerNeighbours[i];
+            if(interior[neighbour] && distance[neighbour] != INFINITY && distance[neighbour] > old) {
+                work[workSize++] = neighbour;
+                working[neighbour] = true;
+            }
+        }
+        int invalidCount = 0;
+        if(++invalidation == Integer.MAX_VALUE) {
+            Arrays.fill(invalidated, 0);
+            invalidation = 1;
+        }
+        while(workSize > 0) {
+            int next = work[--workSize];
+            working[next] = false;
+            int value = distance[next];
+            if(value == INFINITY) continue;
+
+            // Keeps the cell if it still has two neighbours closer than itself
+            count = neighbours(next, colour, outerNeighbours);
+            int closer = 0;
+            for(int i = 0; i < count && closer < 2; i++) {
+                if(distance[outerNeighbours[i]] < value) closer++;
+            }
+            if(closer == 2) continue;
+
+            set(array, next, INFINITY);
+            invalid[invalidCount++] = next;
+            invalidated[next] = invalidation;
+            for(int i = 0; i < count; i++) {
+                int neighbour = outerNeighbours[i];
+                if(interior[neighbour] && !working[neighbour] && distance[neighbour] != INFINITY && distance[neighbour] > value) {
+                    work[workSize++] = neighbour;
+                    working[neighbour] = true;
+                }
+            }
+        }
+        if(invalidCount == 0) return;
+
+        // Fills the invalidated cells back in from the cells around them
+        lowestBucket = LIMIT + 1;
+        for(int i = 0; i < invalidCount; i++) {
+            relax(array, colour, invalid[i]);
+        }
+        propagate(array, colour, true);
+    }
+
+    /**
+     * Pushes lowered distances outwards in order of distance
+     *
+     * @param invalidOnly
+     *            if only the cells invalidated by raise() may change
+     */
+    private void propagate(int array, int colour, boolean invalidOnly) {
+        int[] distance = distances[array];
+        int cells = distance.length;
+        while(lowestBucket <= LIMIT) {
+            int level = lowestBucket;
+            if(bucketSize[level] == 0) {
+                lowestBucket++;
+                continue;
+            }
+            int cell = bucket[level * cells + --bucketSize[level]];
+            if(distance[cell] != level) continue;
+
+            int count = neighbours(cell, colour, outerNeighbours);
+            for(int i = 0; i < count; i++) {
+                int neighbour = outerNeighbours[i];
+                if(invalidOnly && invalidated[neighbour] != invalidation) continue;
+                if(distance[neighbour] > level + 1) relax(array, colour, neighbour);
+            }
+        }
+    }
+
+    /**
+     * Recalculates the distance of a cell from its neighbours and queues it if it went down
+     */
+    private void relax(int array, int colour, int cell) {
+        if(!interior[cell]) return;
+        int[] distance = distances[array];
+        int secondMin;
+        if(board.touches(cell, colour)) {
+            int min = INFINITY;
+            secondMin = INFINITY;
+            int count = neighbours(cell, colour, innerNeighbours);
+            for(int i = 0; i < count; i++) {
+                int number = distance[innerNeighbours[i]];
+                if(number < secondMin) {
+                    secondMin = number;
+                    if(number < min) {
+                        secondMin = min;
+                        min = number;
+                    }
+                }
+            }
+        }
+        else {
+            secondMin = secondMinAround(distance, cell);
+        }
+        if(secondMin >= LIMIT || secondMin + 1 >= distance[cell]) return;
+
+        int value = secondMin + 1;
+        set(array, cell, value);
+        bucket[value * distance.length + bucketSize[value]++] = cell;
+        if(value < lowestBucket) lowestBucket = value;
+    }
+
+    /**
+     * Returns the second smallest distance of the six cells next to an interior cell that touches no chain of the array's colour. Its neighbours are then just
+     * the empty cells among the six, and the others always hold INFINITY, so the six are read at fixed offsets without being listed, and without branches.
+     */
+    private int secondMinAround(int[] distance, int cell) {
+        int above = cell - width;
+        int below = cell + width;
+        int a = distance[above - 1];
+        int b = distance[above];
+        int min = Math.min(a, b);
+        int secondMin = Math.max(a, b);
+        int c = distance[cell - 1];
+        secondMin = Math.min(secondMin, Math.max(min, c));
+        min = Math.min(min, c);
+        c = distance[cell + 1];
+        secondMin = Math.min(secondMin, Math.max(min, c));
+        min = Math.min(min, c);
+        c = distance[below];
+        secondMin = Math.min(secondMin, Math.max(min, c));
+        min = Math.min(min, c);
+        c = distance[below + 1];
+        return Math.min(secondMin, Math.max(min, c));
+    }
+
+    private void set(int array, int cell, int value) {
+        if(trailSize == trailCells.length) {
+            trailCells = Arrays.copyOf(trailCells, trailSize * 2);
+            trailValues = Arrays.copyOf(trailValues, trailSize * 2);
+        }
+        trailCells[trailSize] = cell << 2 | array;
+        trailValues[trailSize] = distances[array][cell];
+        trailSize++;
+        distances[array][cell] = value;
+    }
+
+    /**
+     * Lists the neighbours of a cell for the given colour: the empty cells next to it and next to any chain of that colour that touches it.
+     *
+     * @param out
+     *            the array to fill
+     * @return the number of neighbours
+     */
+    private int neighbours(int cell, int colour, int[] out) {
+        // Most cells do not touch a chain, and then
+        // their neighbours are just the empty cells next to them.
+        if(!board.touches(cell, colour)) return board.emptyNeighbours(cell, out);
+
+        int index = cell * 2 + colour - 1;
+        if(rowVersion[index] != version) addRow(index, cell, colour);
+        System.arraycopy(rows, rowStart[index], out, 0, rowLength[index]);
+        return rowLength[index];
+    }
+
+    /**
+     * Works out the neighbours of a cell next to a chain and adds them to the rows
+     */
+    private void addRow(int index, int cell, int colour) {
+        long[] pieces = board.pieces(colour);
+        board.neighbourMask(cell, reach, 0);
+        for(int k = cell * 6; k < cell * 6 + 6; k++) {
+            int neighbour = adjacent[k];
+            if(neighbour >= 0 && (pieces[neighbour >>> 6] & 1L << neighbour) != 0) chains.addNeighbourhood(chains.find(neighbour), reach);
+        }
+        reach[cell >>> 6] &= ~(1L << cell);
+        board.keepEmpty(reach);
+
+        if(rowsSize + board.cells() > rows.length) rows = Arrays.copyOf(rows, Math.max(rows.length * 2, rowsSize + board.cells()));
+        rowStart[index] = rowsSize;
+        for(int next = BitBoard.next(reach, 0); next >= 0; next = BitBoard.next(reach, next + 1)) {
+            rows[rowsSize++] = next;
+        }
+        rowLength[index] = rowsSize - rowStart[index];
+        rowVersion[index] = version;
+    }
+
+    /**
+     * Forgets the rows worked out so far
+     */
+    private void boardChanged() {
+        rowsSize = 0;
+        if(++version == Integer.MAX_VALUE) {
+            Arrays.fill(rowVersion, 0);
+            version = 1;
+        }
+    }
+}
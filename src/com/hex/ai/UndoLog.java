@@ -0,0 +1,102 @@
+package com.hex.ai;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Bee's history: the pieces placed on its board, turn by turn, so turns can be taken back.
+ *
+ * Each piece is one int, packed as (cell << 4 | previous colour << 2 | colour). The previous colour is only ever not 0 for a swap. A turn places at most two
+ * pieces, the opponent's move and Bee's answer, so undoing one touches a couple of cells whatever the size of the board, and a saved game is four bytes a
+ * piece. A board is restored by replaying the pieces on an empty board.
+ */
+final class UndoLog implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int[] pieces;
+    private int pieceCount;
+    // The index of the first piece of each turn
+    private int[] turns;
+    private int turnCount;
+
+    UndoLog() {
+        pieces = new int[16];
+        turns = new int[8];
+    }
+
+    /**
+     * Starts a new turn. The pieces recorded from now on are taken back together.
+     */
+    void startTurn() {
+        if(turnCount == turns.length) turns = Arrays.copyOf(turns, turnCount * 2 + 8);
+        turns[turnCount++] = pieceCount;
+    }
+
+    /**
+     * Puts a piece on a board and records it in the current turn
+     *
+     * @param board
+     *            the board
+     * @param cell
+     *            the cell of the piece
+     * @param colour
+     *            the colour of the piece
+     */
+    void place(BitBoard board, int cell, int colour) {
+        if(pieceCount == pieces.length) pieces = Arrays.copyOf(pieces, pieceCount * 2 + 16);
+        pieces[pieceCount++] = cell << 4 | board.get(cell) << 2 | colour;
+        board.set(cell, colour);
+    }
+
+    /**
+     * Takes the pieces of the last turn off a board
+     *
+     * @return false if there was no turn to take back
+     */
+    boolean undoTurn(BitBoard board) {
+        if(turnCount == 0) return false;
+        int start = turns[--turnCount];
+        while(pieceCount > start) {
+            int piece = pieces[--pieceCount];
+            board.set(piece >>> 4, piece >>> 2 & 3);
+        }
+        return true;
+    }
+
+    /**
+     * Sets a board to the position after every recorded turn, by replaying the pieces on an empty board
+     */
+    void replay(BitBoard board) {
+        board.clear();
+        for(int i = 0; i < pieceCount; i++) {
+            board.set(pieces[i] >>> 4, pieces[i] & 3);
+        }
+    }
+
+    /**
+     * Replaces the turns of this log with those of another
+     */
+    void copyFrom(UndoLog other) {
+        pieces = Arrays.copyOf(other.pieces, other.pieceCount + 16);
+        pieceCount = other.pieceCount;
+        turns = Arrays.copyOf(other.turns, other.turnCount + 8);
+        turnCount = other.turnCount;
+    }
+
+    /**
+     * Returns a copy of this log without any room to grow, to be saved
+     */
+    UndoLog copy() {
+        UndoLog copy = new UndoLog();
+        copy.pieces = Arrays.copyOf(pieces, pieceCount);
+        copy.pieceCount = pieceCount;
+        copy.turns = Arrays.copyOf(turns, turnCount);
+        copy.turnCount = turnCount;
+        return copy;
+    }
+
+    void clear() {
+        pieceCount = 0;
+        turnCount = 0;
+    }
+}
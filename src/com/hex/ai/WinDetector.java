@@ -0,0 +1,253 @@
+package com.hex.ai;
+
+import com.hex.core.Game;
+import com.hex.core.GameAction;
+import com.hex.core.GamePiece;
+import com.hex.core.Move;
+import com.hex.core.MoveList;
+import com.hex.core.PlayingEntity;
+import com.hex.core.Timer;
+
+/**
+ * Keeps track of who has won a game of Hex as pieces are placed, in the game's own coordinates: team 1 joins x = 0 to x = gridSize - 1 and team 2 joins y = 0
+ * to y = gridSize - 1.
+ *
+ * Pieces are kept in a union-find together with four extra nodes, one for each edge of the board. Placing a piece joins it to its neighbours of the same team
+ * and to the edges it touches, and a team has won as soon as its two edge nodes share a root. That is a few array reads per move instead of a search of the
+ * whole board, and there is no recursion to run out of stack on a large board. Pieces can not be taken back one by one; after an undo the detector is rebuilt.
+ */
+public class WinDetector {
+    private final int gridSize;
+    private final int cells;
+    // The neighbours of every cell, six entries per cell going round the cell, with -1 past the edge of the board
+    private final int[] neighbours;
+    // The edge nodes next to every cell, two entries per cell (one per team), with -1 where there is none
+    private final int[] edges;
+
+    private final byte[] teams;
+    private final int[] parent;
+    private final int[] size;
+    // The number of moves of the game that have been placed, and the last of them, for checkWinPlayer()
+    private int movesSeen;
+    private Move lastMove;
+
+    /**
+     * Creates a detector for an empty board
+     *
+     * @param gridSize
+     *            the size of the board
+     */
+    public WinDetector(int gridSize) {
+        this.gridSize = gridSize;
+        this.cells = gridSize * gridSize;
+        neighbours = new int[cells * 6];
+        edges = new int[cells * 2];
+        for(int x = 0; x < gridSize; x++) {
+            for(int y = 0; y < gridSize; y++) {
+                int cell = x * gridSize + y;
+                int k = cell * 6;
+                neighbours[k++] = x > 0 ? cell - gridSize : -1;
+                neighbours[k++] = x > 0 && y < gridSize - 1 ? cell - gridSize + 1 : -1;
+                neighbours[k++] = y < gridSize - 1 ? cell + 1 : -1;
+                neighbours[k++] = x < gridSize - 1 ? cell + gridSize : -1;
+                neighbours[k++] = x < gridSize - 1 && y > 0 ? cell + gridSize - 1 : -1;
+                neighbours[k++] = y > 0 ? cell - 1 : -1;
+                edges[cell * 2] = x == 0 ? edge(1, 0) : x == gridSize - 1 ? edge(1, 1) : -1;
+                edges[cell * 2 + 1] = y == 0 ? edge(2, 0) : y == gridSize - 1 ? edge(2, 1) : -1;
+            }
+        }
+        teams = new byte[cells];
+        parent = new int[cells + 4];
+        size = new int[cells + 4];
+        clear();
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    /**
+     * Removes every piece
+     */
+    public void clear() {
+        for(int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+        for(int cell = 0; cell < cells; cell++) {
+            teams[cell] = 0;
+        }
+        movesSeen = 0;
+        lastMove = null;
+    }
+
+    /**
+     * Replaces the pieces with the pieces of a board, for instance after an undo
+     *
+     * @param pieces
+     *            the board, indexed [x][y]
+     */
+    public void rebuild(GamePiece[][] pieces) {
+        clear();
+        for(int x = 0; x < gridSize; x++) {
+            for(int y = 0; y < gridSize; y++) {
+                if(pieces[x][y].getTeam() != 0) place(x * gridSize + y, pieces[x][y].getTeam());
+            }
+        }
+    }
+
+    /**
+     * Replaces the pieces with the pieces of another detector of the same size
+     */
+    public void copyFrom(WinDetector other) {
+        System.arraycopy(other.teams, 0, teams, 0, cells);
+        System.arraycopy(other.parent, 0, parent, 0, parent.length);
+        System.arraycopy(other.size, 0, size, 0, size.length);
+        movesSeen = other.movesSeen;
+        lastMove = other.lastMove;
+    }
+
+    /**
+     * Places a piece. A piece placed over a piece of the other team, as the swap rule does, is handled too.
+     *
+     * @param x
+     *            the x coordinate of the piece
+     * @param y
+     *            the y coordinate of the piece
+     * @param team
+     *            the team of the piece, 1 or 2
+     * @return the team if the piece won the game for it, otherwise 0
+     */
+    public int play(int x, int y, int team) {
+        int cell = x * gridSize + y;
+        if(teams[cell] == team) return hasWon(team) ? team : 0;
+        if(teams[cell] != 0) {
+            // A piece can only be taken out of a union-find by starting over
+            byte[] old = teams.clone();
+            old[cell] = 0;
+            clear();
+            for(int i = 0; i < cells; i++) {
+                if(old[i] != 0) place(i, old[i]);
+            }
+        }
+        place(cell, team);
+        return hasWon(team) ? team : 0;
+    }
+
+    /**
+     * Checks if a team has joined its two edges
+     *
+     * @param team
+     *            1 or 2
+     */
+    public boolean hasWon(int team) {
+        return find(edge(team, 0)) == find(edge(team, 1));
+    }
+
+    /**
+     * Returns the team that has joined its two edges, or 0 if neither has
+     */
+    public int getWinner() {
+        if(hasWon(1)) return 1;
+        if(hasWon(2)) return 2;
+        return 0;
+    }
+
+    /**
+     * A drop-in replacement for GameAction.checkWinPlayer(team, game) for a game that only ever asks this detector. New moves in the game's move list are placed
+     * as they come, after checking that the rest of the board is as the detector left it; otherwise, as after an undo, the detector is rebuilt from the board.
+     * Nothing is done while the last move is still the one seen last, and the moves are told apart by identity, so an undo followed by a new move is seen even
+     * though the list is as long as before. The winning path is only marked, the slow way, once the game has actually been won.
+     *
+     * @param team
+     *            the team to check, 1 or 2
+     * @param game
+     *            the game
+     * @return true if the team has won, by connecting its edges or because the other player ran out of time or gave up
+     */
+    public boolean checkWinPlayer(int team, Game game) {
+        PlayingEntity other = team == 1 ? game.getPlayer2() : game.getPlayer1();
+        if(game.gameOptions.timer.type != Timer.NO_TIMER && other.getTime() < 0) return true;
+        if(other.giveUp()) return true;
+
+        MoveList list = game.getMoveList();
+        int moves = list.size();
+        Move last = list.getMove();
+        if(moves != movesSeen || last != lastMove) {
+            if(moves == movesSeen + 1 && matches(game.gamePieces, last)) play(last.getX(), last.getY(), last.getTeam());
+            else rebuild(game.gamePieces);
+            movesSeen = moves;
+            lastMove = last;
+        }
+
+        if(!hasWon(team)) return false;
+        GameAction.checkedFlagReset(game);
+        return GameAction.checkWinPlayer(team, game);
+    }
+
+    /**
+     * Checks if the pieces of a board are the pieces of the detector, except on the cell of a move
+     */
+    private boolean matches(GamePiece[][] pieces, Move move) {
+        for(int x = 0; x < gridSize; x++) {
+            for(int y = 0; y < gridSize; y++) {
+                if(pieces[x][y].getTeam() != teams[x * gridSize + y] && (x != move.getX() || y != move.getY())) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the six neighbours of every cell, in order round the cell, six entries per cell, with -1 past the edge of the board. The array belongs to the
+     * detector and must not be changed.
+     */
+    int[] neighbours() {
+        return neighbours;
+    }
+
+    /**
+     * Places a piece on an empty cell, by cell number
+     */
+    void place(int cell, int team) {
+        teams[cell] = (byte) team;
+        for(int k = cell * 6; k < cell * 6 + 6; k++) {
+            int neighbour = neighbours[k];
+            if(neighbour >= 0 && teams[neighbour] == team) union(cell, neighbour);
+        }
+        int edge = edges[cell * 2 + team - 1];
+        if(edge >= 0) union(cell, edge);
+    }
+
+    /**
+     * Returns the team of the piece on a cell, or 0 if it is empty
+     */
+    int team(int cell) {
+        return teams[cell];
+    }
+
+    private int edge(int team, int side) {
+        return cells + (team - 1) * 2 + side;
+    }
+
+    private int find(int node) {
+        while(parent[node] != node) {
+            // Path halving
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    private void union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if(a == b) return;
+        if(size[a] < size[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        parent[b] = a;
+        size[a] += size[b];
+    }
+}
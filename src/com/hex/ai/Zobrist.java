@@ -0,0 +1,122 @@
+package com.hex.ai;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Zobrist keys for Bee's padded board. Every (cell, colour) pair gets a random 64 bit key and a position is the xor of the keys of its pieces, so a key can be updated
+ * incrementally whenever a piece is placed or removed. A searched position also includes the key of the player to move.
+ *
+ * The keys are generated from a fixed seed so that a position hashes to the same value in every run. Each piece also has a key in every orientation of the
+ * board, for CanonicalHash: the key of the piece the transform moves it to.
+ */
+final class Zobrist {
+    private static final long SEED = 0x5DEECE66DL;
+    private static final HashMap<Integer, Zobrist> cache = new HashMap<Integer, Zobrist>();
+
+    private final int width;
+    private final long[] keys;
+    // The keys of each transform of CanonicalHash, indexed like keys
+    private final long[][] transformedKeys;
+    private final long side;
+    private final long evaluation;
+
+    private Zobrist(int width) {
+        this.width = width;
+        this.keys = new long[width * width * 2];
+        Random random = new Random(SEED + width);
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        side = random.nextLong();
+        evaluation = random.nextLong();
+
+        transformedKeys = new long[CanonicalHash.ALL][keys.length];
+        for(int transform = 0; transform < CanonicalHash.ALL; transform++) {
+            for(int cell = 0; cell < width * width; cell++) {
+                for(int colour = 1; colour <= 2; colour++) {
+                    transformedKeys[transform][cell * 2 + colour - 1] = key(CanonicalHash.cell(cell, transform, width), CanonicalHash.colour(colour, transform));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the keys for a board of the given size. Keys are shared between every board of the same size.
+     *
+     * @param gridSize
+     *            the size of the board, without Bee's border
+     */
+    static synchronized Zobrist forSize(int gridSize) {
+        Zobrist zobrist = cache.get(gridSize);
+        if(zobrist == null) {
+            zobrist = new Zobrist(gridSize + 2);
+            cache.put(gridSize, zobrist);
+        }
+        return zobrist;
+    }
+
+    /**
+     * Returns the key of a single piece
+     *
+     * @param row
+     *            the row of the piece
+     * @param column
+     *            the column of the piece
+     * @param colour
+     *            the colour of the piece, 1 or 2
+     */
+    long key(int row, int column, int colour) {
+        return key(row * width + column, colour);
+    }
+
+    /**
+     * Returns the key of a single piece
+     *
+     * @param cell
+     *            the cell of the piece, numbered row * width + column
+     * @param colour
+     *            the colour of the piece, 1 or 2
+     */
+    long key(int cell, int colour) {
+        return keys[cell * 2 + colour - 1];
+    }
+
+    /**
+     * Returns the key of a single piece after the board is put through a transform of CanonicalHash
+     */
+    long transformedKey(int cell, int colour, int transform) {
+        return transformedKeys[transform][cell * 2 + colour - 1];
+    }
+
+    /**
+     * Returns the key that is added while BLUE is to move. It is flipped with every piece placed during a search.
+     */
+    long side() {
+        return side;
+    }
+
+    /**
+     * Returns the key that is added to the canonical key of a board to store its evaluation, so the evaluation never shares an entry with a search
+     */
+    long evaluation() {
+        return evaluation;
+    }
+
+    /**
+     * Hashes a whole board from scratch. The border is the same on every board, so only the playable cells are hashed.
+     *
+     * @param board
+     *            the board
+     */
+    long hash(BitBoard board) {
+        long hash = 0;
+        for(int i = 1; i < width - 1; i++) {
+            for(int j = 1; j < width - 1; j++) {
+                int piece = board.get(i, j);
+                if(piece != 0) hash ^= key(i, j, piece);
+            }
+        }
+        return hash;
+    }
+}